@@ -0,0 +1,88 @@
+package ch.ethz.coss.algorithm.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.ethz.coss.algorithm.ProductRatingHypNorm;
+import ch.ethz.coss.algorithm.ontology.Association;
+import ch.ethz.coss.algorithm.ontology.Product;
+
+/**
+ * Benchmarks of the association lookups used by the product rating, on every storage of {@link OntologyState}. Each
+ * invocation queries the next preference tag and product.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssociationLookupBenchmark {
+
+	private int next;
+
+	private long preferenceTagId(OntologyState ontology) {
+		return 1 + (next % ontology.preferenceTags);
+	}
+
+	@Benchmark
+	public List<Association> find(OntologyState ontology) {
+		next++;
+		return ontology.map.find(preferenceTagId(ontology));
+	}
+
+	@Benchmark
+	public Map<Long, List<Association>> findAll(OntologyState ontology) {
+		return ontology.map.findAll(ontology.product(next++));
+	}
+
+	@Benchmark
+	public List<Association> matchAll(OntologyState ontology) {
+		next++;
+		return ontology.map.matchAll(preferenceTagId(ontology), ontology.product(next));
+	}
+
+	@Benchmark
+	public double forEach(OntologyState ontology) {
+		next++;
+		double[] sum = new double[1];
+		ontology.map.forEach(preferenceTagId(ontology), (preferenceTagId, productTagId, associationValue) -> sum[0] += associationValue);
+		return sum[0];
+	}
+
+	@Benchmark
+	public double getValue(OntologyState ontology) {
+		next++;
+		Product product = ontology.product(next);
+		long preferenceTagId = preferenceTagId(ontology);
+		double sum = 0.0;
+		for(Long productTagId : product.getTagIds()) {
+			double value = ontology.map.getValue(preferenceTagId, productTagId);
+			sum += Double.isNaN(value) ? 0.0 : value;
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public List<Association> filterOnProduct(OntologyState ontology) {
+		next++;
+		Product product = ontology.product(next);
+		return ProductRatingHypNorm.filterOnProduct(product, ontology.map.find(preferenceTagId(ontology)));
+	}
+}
@@ -0,0 +1,149 @@
+package ch.ethz.coss.algorithm.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.ethz.coss.algorithm.BatchProductRating;
+import ch.ethz.coss.algorithm.ParallelProductRating;
+import ch.ethz.coss.algorithm.ProductRatingHypNorm;
+import ch.ethz.coss.algorithm.RatingEngine;
+import ch.ethz.coss.algorithm.Recommendation;
+import ch.ethz.coss.algorithm.SustainabilityIndexMatrix;
+import ch.ethz.coss.algorithm.TopKRanking;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.User;
+
+/**
+ * Benchmarks of rating the whole catalog for the user, with every rating engine on every storage of
+ * {@link OntologyState}. An engine is prepared once per trial, e.g. its indexes and compiled products, and each
+ * invocation rates all the products. A new engine is benchmarked by adding a constant to {@link Engine}.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogRatingBenchmark {
+
+	/**
+	 * Rates the catalog of the ontology for a user.
+	 */
+	@FunctionalInterface
+	public interface CatalogRater {
+		Object rateAll(User user);
+	}
+
+	/**
+	 * The benchmarked rating engines.
+	 */
+	public enum Engine {
+		/**
+		 * One {@link ProductRatingHypNorm} per product.
+		 */
+		HYP_NORM {
+			@Override
+			CatalogRater prepare(OntologyState ontology) {
+				return user -> {
+					List<Recommendation> recommendations = new ArrayList<>(ontology.catalog.size());
+					for(Product product : ontology.catalog) {
+						recommendations.add(new ProductRatingHypNorm(ontology.products, ontology.map, user, product).recommend());
+					}
+					return recommendations;
+				};
+			}
+		},
+		BATCH {
+			@Override
+			CatalogRater prepare(OntologyState ontology) {
+				BatchProductRating rating = new BatchProductRating(ontology.map);
+				return user -> rating.rateAll(user, ontology.catalog);
+			}
+		},
+		/**
+		 * {@link ParallelProductRating} on the common pool.
+		 */
+		PARALLEL {
+			@Override
+			CatalogRater prepare(OntologyState ontology) {
+				ParallelProductRating rating = new ParallelProductRating(ontology.map);
+				return user -> rating.rateAll(user, ontology.catalog);
+			}
+		},
+		/**
+		 * {@link RatingEngine} over the compiled associations, with the products compiled once and the user compiled
+		 * per invocation.
+		 */
+		COMPILED_ENGINE {
+			@Override
+			CatalogRater prepare(OntologyState ontology) {
+				RatingEngine engine = new RatingEngine(ontology.compiled);
+				int[][] productTags = new int[ontology.catalog.size()][];
+				for(int product = 0; product < productTags.length; product++) {
+					productTags[product] = engine.compile(ontology.catalog.get(product));
+				}
+				return user -> {
+					RatingEngine.CompiledUser compiledUser = engine.compile(user);
+					double[] ratings = new double[productTags.length];
+					for(int product = 0; product < productTags.length; product++) {
+						ratings[product] = engine.productRating(compiledUser, productTags[product]);
+					}
+					return ratings;
+				};
+			}
+		},
+		MATRIX {
+			@Override
+			CatalogRater prepare(OntologyState ontology) {
+				SustainabilityIndexMatrix matrix = new SustainabilityIndexMatrix(ontology.preferences, ontology.products, ontology.map);
+				return matrix::recommendAll;
+			}
+		},
+		/**
+		 * The 10 best products of {@link TopKRanking}.
+		 */
+		TOP_K {
+			@Override
+			CatalogRater prepare(OntologyState ontology) {
+				TopKRanking ranking = new TopKRanking(new SustainabilityIndexMatrix(ontology.preferences, ontology.products, ontology.map));
+				return user -> ranking.topK(user, 10);
+			}
+		};
+
+		abstract CatalogRater prepare(OntologyState ontology);
+	}
+
+	@Param({"HYP_NORM", "BATCH", "PARALLEL", "COMPILED_ENGINE", "MATRIX", "TOP_K"})
+	public Engine engine;
+
+	private CatalogRater rater;
+
+	@Setup(Level.Trial)
+	public void setup(OntologyState ontology) {
+		rater = engine.prepare(ontology);
+	}
+
+	@Benchmark
+	public Object rateAll(OntologyState ontology) {
+		return rater.rateAll(ontology.user);
+	}
+}
@@ -0,0 +1,129 @@
+package ch.ethz.coss.algorithm.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.AssociationMap.Storage;
+import ch.ethz.coss.algorithm.ontology.CompiledAssociations;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.OntologyGenerator;
+
+/**
+ * A synthetic ontology, catalog and user shared by the benchmarks, created by the {@link OntologyGenerator}. The ontology
+ * size is given by the JMH parameters, the seed is fixed so that all runs and forks measure the same ontology, which is
+ * also the one written to files by the generator with the same seed and sizes. The storage of the associations is a
+ * parameter too, so that every benchmark compares the {@link Backend backends} on the same ontology.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+@State(Scope.Benchmark)
+public class OntologyState {
+
+	/**
+	 * The storages of the association map that are benchmarked.
+	 */
+	public enum Backend {
+		CONCURRENT {
+			@Override
+			AssociationMap associations(OntologyGenerator generator) {
+				return generator.associations(Storage.CONCURRENT);
+			}
+		},
+		PACKED {
+			@Override
+			AssociationMap associations(OntologyGenerator generator) {
+				return generator.associations(Storage.PACKED);
+			}
+		},
+		/**
+		 * A read only map backed by {@link CompiledAssociations}.
+		 */
+		COMPILED {
+			@Override
+			AssociationMap associations(OntologyGenerator generator) {
+				return generator.associations(Storage.PACKED).compile().asAssociationMap();
+			}
+		};
+
+		abstract AssociationMap associations(OntologyGenerator generator);
+	}
+
+	@Param({"CONCURRENT", "PACKED", "COMPILED"})
+	public Backend storage;
+
+	@Param({"100", "1000"})
+	public int preferenceTags;
+
+	@Param({"1000", "10000"})
+	public int productTags;
+
+	@Param({"50"})
+	public int associationsPerPreferenceTag;
+
+	@Param({"1000"})
+	public int productCount;
+
+	@Param({"1.0"})
+	public double skew;
+
+	@Param({"10"})
+	public double tagsPerProduct;
+
+	@Param({"20"})
+	public int preferenceCount;
+
+	@Param({"5"})
+	public int tagsPerPreference;
+
+	public AssociationMap map;
+	public CompiledAssociations compiled;
+	public Map<Long, Product> products;
+	public List<Product> catalog;
+	public List<Preference> preferences;
+	public User user;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		OntologyGenerator generator = new OntologyGenerator(42);
+		generator.setPreferenceTagCount(preferenceTags);
+		generator.setProductTagCount(productTags);
+		generator.setAssociationsPerPreferenceTag(associationsPerPreferenceTag);
+		generator.setSkew(skew);
+		generator.setProductCount(productCount);
+		generator.setMeanTagsPerProduct(tagsPerProduct);
+		generator.setPreferenceCount(preferenceCount);
+		generator.setTagsPerPreference(tagsPerPreference);
+		generator.setUserCount(1);
+
+		map = storage.associations(generator);
+		compiled = map.compile();
+		catalog = generator.products();
+		products = new HashMap<>();
+		for(Product product : catalog) {
+			products.put(product.getId(), product);
+		}
+		preferences = generator.preferences(generator.preferenceTags());
+		user = generator.users(preferences).get(0);
+	}
+
+	/**
+	 * @param index any non-negative number
+	 * @return a product of the catalog, cycling over the catalog
+	 */
+	public Product product(int index) {
+		return catalog.get(index % catalog.size());
+	}
+}
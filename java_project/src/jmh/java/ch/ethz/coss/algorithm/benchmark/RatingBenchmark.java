@@ -0,0 +1,63 @@
+package ch.ethz.coss.algorithm.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.ethz.coss.algorithm.ProductRatingHypNorm;
+import ch.ethz.coss.algorithm.Recommendation;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.utilities.Pair;
+
+/**
+ * Benchmarks of the product rating, i.e. the construction of {@link ProductRatingHypNorm}, {@link ProductRatingHypNorm#recommend()}
+ * and the explanation getters. Each invocation rates the next product of the catalog.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RatingBenchmark {
+
+	private int next;
+
+	private ProductRatingHypNorm rate(OntologyState ontology) {
+		return new ProductRatingHypNorm(ontology.products, ontology.map, ontology.user, ontology.product(next++));
+	}
+
+	@Benchmark
+	public ProductRatingHypNorm construction(OntologyState ontology) {
+		return rate(ontology);
+	}
+
+	@Benchmark
+	public Recommendation recommend(OntologyState ontology) {
+		return rate(ontology).recommend();
+	}
+
+	@Benchmark
+	public List<Pair<Long, Double>> productTagContribution(OntologyState ontology) {
+		return rate(ontology).getProductTagContribution();
+	}
+
+	@Benchmark
+	public List<Pair<Preference, Double>> preferenceContributions(OntologyState ontology) {
+		return rate(ontology).getPreferenceContributions();
+	}
+}
@@ -0,0 +1,218 @@
+package ch.ethz.coss.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.ProductCatalog;
+import ch.ethz.coss.algorithm.ontology.ProductTagIndex;
+import ch.ethz.coss.algorithm.ontology.ProductTagSet;
+import ch.ethz.coss.algorithm.ontology.ProductTagSetInterner;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
+/**
+ * Rates a whole product collection for one user in a single pass over the ontology. Each preference tag of the user
+ * preferences is visited once, and its associations are pushed to every product holding the matched product tag,
+ * instead of constructing a {@link ProductRatingHypNorm} and re-walking all preference tags per product.
+ * The ratings are the same as the ones of {@link ProductRatingHypNorm}. A rating only depends on the tags of a product,
+ * so products with equal tags are rated once and share the rating.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class BatchProductRating {
+
+	final protected AssociationMap tagAssociations;
+	final protected ScoringConfig config;
+
+	/**
+	 * Constructor, with the current {@link ch.ethz.coss.algorithm.utilities.Scores}
+	 * @param tagAssociations the tag associations map, that contains all association scores and tag pairs related to the calculation.
+	 */
+	public BatchProductRating(AssociationMap tagAssociations) {
+		this(tagAssociations, ScoringConfig.fromScores());
+	}
+
+	/**
+	 * Constructor
+	 * @param tagAssociations the tag associations map, that contains all association scores and tag pairs related to the calculation.
+	 * @param config the scoring configuration of the ratings
+	 */
+	public BatchProductRating(AssociationMap tagAssociations, ScoringConfig config) {
+		this.tagAssociations = tagAssociations;
+		this.config = config;
+	}
+
+	public ScoringConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Rates all the given products for a user.
+	 * @param user the user object
+	 * @param products the products to rate
+	 * @return the recommendations, in the iteration order of the products
+	 */
+	public List<Recommendation> rateAll(User user, Collection<Product> products) {
+		List<Product> catalog = new ArrayList<>(products);
+		double[] rawProductRatings = rawProductRatings(user, catalog);
+		List<Recommendation> recommendations = new ArrayList<>(catalog.size());
+		for(int product = 0; product < catalog.size(); product++) {
+			recommendations.add(new Recommendation(user.getUid(), catalog.get(product).getId(), config.scale(rawProductRatings[product])));
+		}
+		return recommendations;
+	}
+
+	/**
+	 * Rates all the products of a catalog for a user.
+	 * @param user the user object
+	 * @param catalog the product catalog
+	 * @return the recommendations, in the order of the catalog ordinals
+	 */
+	public List<Recommendation> rateAll(User user, ProductCatalog catalog) {
+		double[] rawProductRatings = rawProductRatings(user, catalog);
+		List<Recommendation> recommendations = new ArrayList<>(catalog.size());
+		for(int product = 0; product < catalog.size(); product++) {
+			recommendations.add(new Recommendation(user.getUid(), catalog.productId(product), config.scale(rawProductRatings[product])));
+		}
+		return recommendations;
+	}
+
+	/**
+	 * Calculates the non-scaled ratings of all the products of a catalog for a user. Only the tag columns of the
+	 * catalog are read.
+	 * @param user the user object
+	 * @param catalog the product catalog
+	 * @return the non-scaled ratings, by catalog ordinal. NaN if there is no information about a product,
+	 * negative infinity for contradictions.
+	 */
+	public double[] rawProductRatings(User user, ProductCatalog catalog) {
+		return rawProductRatings(user, catalog.getTagIndex());
+	}
+
+	/**
+	 * Calculates the non-scaled ratings of all the given products for a user.
+	 * @param user the user object
+	 * @param products the products to rate
+	 * @return the non-scaled ratings, in the order of the products. NaN if there is no information about a product,
+	 * negative infinity for contradictions.
+	 */
+	public double[] rawProductRatings(User user, List<Product> products) {
+		List<Product> distinct = new ArrayList<>();
+		int[] distinctOf = distinctTagSets(products, distinct);
+		return fanOut(rawDistinctProductRatings(user, distinct), distinctOf);
+	}
+
+	/**
+	 * Groups products with equal tags, whose ratings are equal. The tag sets are pooled by their 64 bit signature,
+	 * since the set hash code is a plain sum of the tag ids that collides for many small sets, and the pooled sets are
+	 * then compared by identity.
+	 * @param products the products to rate
+	 * @param distinct receives the first product of every distinct tag set
+	 * @return for every product, the position of the product with the same tags in the distinct products
+	 */
+	static int[] distinctTagSets(List<Product> products, List<Product> distinct) {
+		ProductTagSetInterner interner = new ProductTagSetInterner();
+		Map<ProductTagSet, Integer> positions = new IdentityHashMap<>();
+		int[] distinctOf = new int[products.size()];
+		for(int product = 0; product < products.size(); product++) {
+			ProductTagSet tags = interner.intern(products.get(product).getTagSet());
+			Integer position = positions.get(tags);
+			if(position == null) {
+				position = distinct.size();
+				positions.put(tags, position);
+				distinct.add(products.get(product));
+			}
+			distinctOf[product] = position;
+		}
+		return distinctOf;
+	}
+
+	/**
+	 * @param distinctRatings the ratings of the distinct products
+	 * @param distinctOf for every product, the position of the product with the same tags in the distinct products
+	 * @return the ratings of all the products
+	 */
+	static double[] fanOut(double[] distinctRatings, int[] distinctOf) {
+		double[] rawProductRatings = new double[distinctOf.length];
+		for(int product = 0; product < distinctOf.length; product++) {
+			rawProductRatings[product] = distinctRatings[distinctOf[product]];
+		}
+		return rawProductRatings;
+	}
+
+	/**
+	 * Calculates the non-scaled ratings of products without grouping equal tag sets.
+	 * @param user the user object
+	 * @param products the products to rate
+	 * @return the non-scaled ratings, in the order of the products
+	 */
+	double[] rawDistinctProductRatings(User user, List<Product> products) {
+		//products without any associated tag are NaN for every user and are left out of the index
+		List<Product> reachable = new ArrayList<>(products.size());
+		int[] positions = new int[products.size()];
+		for(int position = 0; position < products.size(); position++) {
+			if(tagAssociations.hasTagInformation(products.get(position))) {
+				positions[reachable.size()] = position;
+				reachable.add(products.get(position));
+			}
+		}
+		double[] reachableRatings = rawProductRatings(user, new ProductTagIndex(reachable));
+
+		double[] rawProductRatings = new double[products.size()];
+		Arrays.fill(rawProductRatings, Double.NaN);
+		for(int product = 0; product < reachable.size(); product++) {
+			rawProductRatings[positions[product]] = reachableRatings[product];
+		}
+		return rawProductRatings;
+	}
+
+	/**
+	 * @param user the user object
+	 * @param productTagIndex the index of the products to rate
+	 * @return the non-scaled ratings, by position in the index
+	 */
+	private double[] rawProductRatings(User user, ProductTagIndex productTagIndex) {
+		int productCount = productTagIndex.getProductCount();
+		double summedOffset = user.getTotalAbsoluteOffset(config);
+		double[] summedAverageAssociations = new double[productCount];
+		boolean[] information = new boolean[productCount];
+		boolean[] contradictions = new boolean[productCount];
+
+		PreferenceScanner scanner = new PreferenceScanner(tagAssociations, productTagIndex, config);
+		for(Entry<Preference, Double> preferenceAndScore : user.getPreferences().entrySet()) {
+			double preferenceOffset = preferenceAndScore.getValue() - config.getMeanUserPreference();
+			int touched = scanner.scan(preferenceAndScore.getKey(), preferenceOffset);
+			for(int i = 0; i < touched; i++) {
+				int product = scanner.touched(i);
+				information[product] = true;
+				contradictions[product] |= scanner.isContradiction(product);
+				double averageAssociation = scanner.averageAssociation(product);
+				//This is done because preferences without preference tags or contraditions are assigned non finite values.
+				summedAverageAssociations[product] += Double.isFinite(averageAssociation) ? averageAssociation*preferenceOffset : 0;
+			}
+		}
+
+		double[] rawProductRatings = new double[productCount];
+		for(int product = 0; product < productCount; product++) {
+			if(summedOffset == 0.0 || !information[product]) {
+				rawProductRatings[product] = Double.NaN;
+			} else if(contradictions[product]) {
+				rawProductRatings[product] = Double.NEGATIVE_INFINITY;
+			} else {
+				rawProductRatings[product] = summedAverageAssociations[product]/summedOffset;
+			}
+		}
+		return rawProductRatings;
+	}
+}
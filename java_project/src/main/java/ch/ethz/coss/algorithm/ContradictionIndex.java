@@ -0,0 +1,230 @@
+package ch.ethz.coss.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.ethz.coss.algorithm.ontology.Association;
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.PreferenceTag;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.ProductTagIndex;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.LongIntHashMap;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
+/**
+ * The products that contradict a strict answer, precomputed per preference and {@link Direction}. A contradiction
+ * turns the rating of a product into negative infinity, as soon as one matched association times the offset of a
+ * preference equals the contradiction offset of the configuration. With associations within the allowed range this
+ * only happens for the extreme answers, so the contradicting products of a user are the union of the sets of their
+ * strict preferences, and can be rejected or placed apart before any rating.
+ * <p>
+ * The index is read only after construction and safe to share between threads. It has to be rebuilt when the
+ * ontology, the preferences or the product tags change.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class ContradictionIndex {
+
+	/**
+	 * The direction of a strict answer.
+	 */
+	public enum Direction {
+		/** the maximum user preference, e.g. 10 on a scale of 0-10 */
+		PRO,
+		/** the minimum user preference, i.e. 0 */
+		AGAINST
+	}
+
+	private final ScoringConfig config;
+	private final double proOffset;
+	private final double againstOffset;
+
+	/* products in ascending id */
+	private final LongIntHashMap productOrdinals;
+	private final long[] productIds;
+
+	/* contradicting product ordinals per preference, one set per direction */
+	private final Map<Preference, BitSet[]> contradictions;
+
+	/**
+	 * Constructor, with the current {@link ch.ethz.coss.algorithm.utilities.Scores}
+	 * @param preferences all the preferences that users can answer
+	 * @param products the products map that contains product ids and objects
+	 * @param tagAssociations the tag associations map
+	 */
+	public ContradictionIndex(Collection<Preference> preferences, Map<Long, Product> products, AssociationMap tagAssociations) {
+		this(preferences, products, tagAssociations, ScoringConfig.fromScores());
+	}
+
+	/**
+	 * Constructor, finds the contradicting products of every preference.
+	 * @param preferences all the preferences that users can answer
+	 * @param products the products map that contains product ids and objects
+	 * @param tagAssociations the tag associations map
+	 * @param config the scoring configuration, that defines the strict answers and the contradiction offset
+	 */
+	public ContradictionIndex(Collection<Preference> preferences, Map<Long, Product> products, AssociationMap tagAssociations, ScoringConfig config) {
+		this.config = config;
+		this.proOffset = config.getMaxUserPreference() - config.getMeanUserPreference();
+		this.againstOffset = -config.getMeanUserPreference();
+
+		this.productIds = new long[products.size()];
+		int ordinal = 0;
+		for(Long productId : products.keySet()) {
+			productIds[ordinal++] = productId;
+		}
+		Arrays.sort(productIds);
+		this.productOrdinals = new LongIntHashMap(productIds.length);
+		List<Product> catalog = new ArrayList<>(productIds.length);
+		for(ordinal = 0; ordinal < productIds.length; ordinal++) {
+			productOrdinals.put(productIds[ordinal], ordinal);
+			catalog.add(products.get(productIds[ordinal]));
+		}
+		ProductTagIndex productTagIndex = new ProductTagIndex(catalog);
+
+		this.contradictions = new HashMap<>();
+		for(Preference preference : preferences) {
+			BitSet pro = new BitSet(productIds.length);
+			BitSet against = new BitSet(productIds.length);
+			for(PreferenceTag tag : preference.getTagList()) {
+				for(Association association : tagAssociations.find(tag.getId())) {
+					double associationValue = association.getAssociationValue();
+					boolean contradictsPro = config.isContradiction(proOffset, associationValue);
+					boolean contradictsAgainst = config.isContradiction(againstOffset, associationValue);
+					if(!contradictsPro && !contradictsAgainst) {
+						continue;
+					}
+					int slot = productTagIndex.slot(association.getProductTagId());
+					if(slot < 0) {
+						continue;
+					}
+					for(int index = productTagIndex.start(slot); index < productTagIndex.end(slot); index++) {
+						if(contradictsPro) {
+							pro.set(productTagIndex.positionAt(index));
+						}
+						if(contradictsAgainst) {
+							against.set(productTagIndex.positionAt(index));
+						}
+					}
+				}
+			}
+			contradictions.put(preference, new BitSet[] {pro, against});
+		}
+	}
+
+	/**
+	 * @param preferenceOffset the offset of an answer from the mean user preference
+	 * @return the direction of a strict answer, null if the answer is not strict
+	 */
+	public Direction direction(double preferenceOffset) {
+		if(preferenceOffset == proOffset) {
+			return Direction.PRO;
+		} else if(preferenceOffset == againstOffset) {
+			return Direction.AGAINST;
+		}
+		return null;
+	}
+
+	/**
+	 * @param preference a preference of the index
+	 * @param direction the direction of the strict answer
+	 * @return the ids of the contradicting products, in ascending order
+	 */
+	public long[] getContradictingProducts(Preference preference, Direction direction) {
+		return productIds(contradictions(preference)[direction.ordinal()]);
+	}
+
+	/**
+	 * @param user the user object
+	 * @return the ids of the products that contradict a strict answer of the user, in ascending order
+	 */
+	public long[] getContradictingProducts(User user) {
+		return productIds(contradictions(user));
+	}
+
+	/**
+	 * @param user the user object
+	 * @param product a product of the index
+	 * @return true if the product contradicts a strict answer of the user, i.e. its non-scaled rating is negative infinity
+	 */
+	public boolean isContradiction(User user, Product product) {
+		int productOrdinal = productOrdinals.get(product.getId());
+		if(productOrdinal == LongIntHashMap.MISSING) {
+			throw new IllegalArgumentException("Product is not indexed: " + product.getId());
+		}
+		List<Preference> preferences = user.getPreferenceList();
+		for(int i = 0; i < preferences.size(); i++) {
+			Direction direction = direction(user.getScore(i) - config.getMeanUserPreference());
+			if(direction != null && contradictions(preferences.get(i))[direction.ordinal()].get(productOrdinal)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Splits products in the ones that need rating and the ones that contradict a strict answer of the user.
+	 * @param user the user object
+	 * @param products products of the index
+	 * @param contradicting receives the contradicting products, may be null to drop them
+	 * @return the products without contradictions, in the iteration order of the given products
+	 */
+	public List<Product> filter(User user, Collection<Product> products, Collection<Product> contradicting) {
+		BitSet userContradictions = contradictions(user);
+		List<Product> remaining = new ArrayList<>(products.size());
+		for(Product product : products) {
+			int productOrdinal = productOrdinals.get(product.getId());
+			if(productOrdinal != LongIntHashMap.MISSING && userContradictions.get(productOrdinal)) {
+				if(contradicting != null) {
+					contradicting.add(product);
+				}
+			} else {
+				remaining.add(product);
+			}
+		}
+		return remaining;
+	}
+
+	private BitSet contradictions(User user) {
+		BitSet userContradictions = new BitSet(productIds.length);
+		List<Preference> preferences = user.getPreferenceList();
+		for(int i = 0; i < preferences.size(); i++) {
+			Direction direction = direction(user.getScore(i) - config.getMeanUserPreference());
+			if(direction != null) {
+				userContradictions.or(contradictions(preferences.get(i))[direction.ordinal()]);
+			}
+		}
+		return userContradictions;
+	}
+
+	private BitSet[] contradictions(Preference preference) {
+		BitSet[] preferenceContradictions = contradictions.get(preference);
+		if(preferenceContradictions == null) {
+			throw new IllegalArgumentException("Preference is not indexed: " + preference.getId());
+		}
+		return preferenceContradictions;
+	}
+
+	private long[] productIds(BitSet productOrdinals) {
+		long[] ids = new long[productOrdinals.cardinality()];
+		int i = 0;
+		for(int ordinal = productOrdinals.nextSetBit(0); ordinal >= 0; ordinal = productOrdinals.nextSetBit(ordinal + 1)) {
+			ids[i++] = productIds[ordinal];
+		}
+		return ids;
+	}
+
+	public ScoringConfig getConfig() {
+		return config;
+	}
+}
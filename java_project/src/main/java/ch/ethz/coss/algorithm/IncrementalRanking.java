@@ -0,0 +1,239 @@
+package ch.ethz.coss.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.Pair;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
+/**
+ * A materialized ranking of the products of a {@link SustainabilityIndexMatrix} for one user, that is updated in place
+ * when the user changes the score of a single preference, e.g. while moving a questionnaire slider. The non-scaled
+ * rating of a product is the sum of its sustainability indices weighted by the preference offsets, divided by the
+ * summed offset. The ranking keeps the weighted sums, the number of answered preferences with information and the
+ * number of contradicting preferences per product. A changed score only updates the products in the row of its
+ * preference. The summed offset divides all ratings alike and does not change their order, so it is applied when
+ * the ratings are read.
+ * <p>
+ * The ranking contains the products with information and without contradictions, by descending rating and ascending
+ * product id on ties, as {@link TopKRanking} with the default placements. Repeated updates accumulate rounding errors
+ * in the order of the machine precision, so after a number of updates the sums are recomputed from scratch, and are
+ * then identical to the ones of a new ranking for the same answers.
+ * <p>
+ * The ranking works on a copy of the user, available through {@link #getUser()}, so the given user is never changed.
+ * The ranking is not thread safe.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class IncrementalRanking {
+
+	/** the default number of updates after which the sums are recomputed */
+	public static final int DEFAULT_REFRESH_INTERVAL = 64;
+
+	final protected SustainabilityIndexMatrix matrix;
+	final protected ScoringConfig config;
+	final protected User user;
+	final protected int refreshInterval;
+	private int updatesSinceRefresh;
+
+	/* per preference ordinal, the offset included in the sums. NaN for preferences the user has not answered */
+	private final double[] appliedOffsets;
+	/* per product ordinal */
+	private final double[] summedAverageAssociations;
+	private final int[] information;
+	private final int[] contradictions;
+	private double summedOffset;
+
+	/* the ordinals of the ranked products, best first */
+	private final TreeSet<Integer> ranking;
+
+	/**
+	 * Constructor, rates the whole catalog once for the current preferences of the user.
+	 * @param matrix the sustainability index matrix, that indexes all the preferences of the user
+	 * @param user the user object, copied
+	 */
+	public IncrementalRanking(SustainabilityIndexMatrix matrix, User user) {
+		this(matrix, user, DEFAULT_REFRESH_INTERVAL);
+	}
+
+	/**
+	 * Constructor, rates the whole catalog once for the current preferences of the user.
+	 * @param matrix the sustainability index matrix, that indexes all the preferences of the user
+	 * @param user the user object, copied
+	 * @param refreshInterval the number of updates after which the sums are recomputed from scratch
+	 */
+	public IncrementalRanking(SustainabilityIndexMatrix matrix, User user, int refreshInterval) {
+		if(refreshInterval < 1) {
+			throw new IllegalArgumentException("refresh interval must be positive: " + refreshInterval);
+		}
+		this.matrix = matrix;
+		this.config = matrix.getConfig();
+		this.user = copy(user);
+		this.refreshInterval = refreshInterval;
+		this.appliedOffsets = new double[matrix.preferenceCount()];
+		Arrays.fill(appliedOffsets, Double.NaN);
+		this.summedAverageAssociations = new double[matrix.productCount()];
+		this.information = new int[matrix.productCount()];
+		this.contradictions = new int[matrix.productCount()];
+		//a negative rating scale reverses the order of the ratings
+		double direction = Math.signum(config.getRatingScale());
+		this.ranking = new TreeSet<>((p1, p2) -> {
+			int compare = Double.compare(direction*summedAverageAssociations[p2], direction*summedAverageAssociations[p1]);
+			return compare != 0 ? compare : Long.compare(matrix.productId(p1), matrix.productId(p2));
+		});
+
+		refresh();
+	}
+
+	private static User copy(User user) {
+		List<Pair<Preference, Double>> answers = new ArrayList<>();
+		List<Preference> preferences = user.getPreferenceList();
+		for(int i = 0; i < preferences.size(); i++) {
+			answers.add(new Pair<>(preferences.get(i), user.getScore(i)));
+		}
+		User copy = new User(user.getUid(), user.getConfig());
+		copy.addPreferences(answers);
+		return copy;
+	}
+
+	/**
+	 * Recomputes the sums of all the products from the current preferences of the user, discarding the rounding
+	 * errors of the previous updates.
+	 */
+	public void refresh() {
+		ranking.clear();
+		Arrays.fill(appliedOffsets, Double.NaN);
+		Arrays.fill(summedAverageAssociations, 0.0);
+		Arrays.fill(information, 0);
+		Arrays.fill(contradictions, 0);
+		//same order of summation as SustainabilityIndexMatrix#recommendAll
+		List<Preference> preferences = user.getPreferenceList();
+		for(int i = 0; i < preferences.size(); i++) {
+			apply(matrix.preferenceOrdinal(preferences.get(i)), user.getScore(i) - config.getMeanUserPreference());
+		}
+		summedOffset = user.getTotalAbsoluteOffset(config);
+		updatesSinceRefresh = 0;
+	}
+
+	/**
+	 * Sets the score of a preference of the user, and updates the ratings of the products in the row of the preference.
+	 * @param preference the preference, new or already answered by the user
+	 * @param score the new score
+	 * @throws IllegalArgumentException if the preference is not indexed by the matrix
+	 */
+	public void update(Preference preference, double score) {
+		int preferenceOrdinal = matrix.preferenceOrdinal(preference);
+		user.addPreference(preference, score);
+		if(++updatesSinceRefresh >= refreshInterval) {
+			refresh();
+			return;
+		}
+		apply(preferenceOrdinal, score - config.getMeanUserPreference());
+		summedOffset = user.getTotalAbsoluteOffset(config);
+	}
+
+	/**
+	 * Replaces the offset of a preference in the sums of the products of its row.
+	 */
+	private void apply(int preferenceOrdinal, double preferenceOffset) {
+		double previousOffset = appliedOffsets[preferenceOrdinal];
+		boolean answered = !Double.isNaN(previousOffset);
+		for(int cell = matrix.rowStart(preferenceOrdinal); cell < matrix.rowEnd(preferenceOrdinal); cell++) {
+			int productOrdinal = matrix.cellProduct(cell);
+			//the ordering key changes, so the product is removed before and added after the update
+			if(isRanked(productOrdinal)) {
+				ranking.remove(productOrdinal);
+			}
+
+			double averageAssociation = matrix.cellIndex(cell);
+			if(Double.isFinite(averageAssociation)) {
+				if(answered) {
+					summedAverageAssociations[productOrdinal] -= averageAssociation*previousOffset;
+				}
+				summedAverageAssociations[productOrdinal] += averageAssociation*preferenceOffset;
+			}
+			if(!answered) {
+				information[productOrdinal]++;
+			} else if(matrix.isContradiction(previousOffset, cell)) {
+				contradictions[productOrdinal]--;
+			}
+			if(matrix.isContradiction(preferenceOffset, cell)) {
+				contradictions[productOrdinal]++;
+			}
+
+			if(isRanked(productOrdinal)) {
+				ranking.add(productOrdinal);
+			}
+		}
+		appliedOffsets[preferenceOrdinal] = preferenceOffset;
+	}
+
+	private boolean isRanked(int productOrdinal) {
+		return information[productOrdinal] > 0 && contradictions[productOrdinal] == 0;
+	}
+
+	/**
+	 * @param productId the id of a product of the matrix
+	 * @return the current non-scaled rating. NaN if there is no information about the product, negative infinity for contradictions.
+	 */
+	public double rawProductRating(long productId) {
+		return rawProductRating(matrix.productOrdinal(productId));
+	}
+
+	private double rawProductRating(int productOrdinal) {
+		if(summedOffset == 0.0 || information[productOrdinal] == 0) {
+			return Double.NaN;
+		} else if(contradictions[productOrdinal] > 0) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		return summedAverageAssociations[productOrdinal]/summedOffset;
+	}
+
+	/**
+	 * @param productId the id of a product of the matrix
+	 * @return the current scaled rating
+	 */
+	public double productRating(long productId) {
+		return config.scale(rawProductRating(productId));
+	}
+
+	/**
+	 * @param k the maximum number of recommendations
+	 * @return at most k recommendations, best first
+	 */
+	public List<Recommendation> topK(int k) {
+		List<Recommendation> recommendations = new ArrayList<>(Math.max(0, Math.min(k, ranking.size())));
+		//without offsets every product lacks information
+		if(summedOffset == 0.0) {
+			return recommendations;
+		}
+		for(Integer productOrdinal : ranking) {
+			if(recommendations.size() >= k) {
+				break;
+			}
+			recommendations.add(new Recommendation(user.getUid(), matrix.productId(productOrdinal), config.scale(rawProductRating(productOrdinal))));
+		}
+		return recommendations;
+	}
+
+	/**
+	 * @return all the ranked products, best first
+	 */
+	public List<Recommendation> getRanking() {
+		return topK(ranking.size());
+	}
+
+	/**
+	 * @return the copy of the user that holds the current answers
+	 */
+	public User getUser() {
+		return user;
+	}
+}
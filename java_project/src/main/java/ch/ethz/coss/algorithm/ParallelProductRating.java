@@ -0,0 +1,137 @@
+package ch.ethz.coss.algorithm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
+/**
+ * Rates a product catalog for one user over a {@link ForkJoinPool}. The associations of the user preferences are
+ * collected once per user in a {@link UserTagWeights} table before the tasks are forked. The catalog is then split
+ * in chunks of consecutive products, each chunk only looks up the tags of its own products in the table, and the
+ * ratings are written back at the positions of the products. The associations of a product are summed in the same
+ * order as in {@link BatchProductRating}, so the ratings and their order are identical to the sequential engine for
+ * any number of threads.
+ * <p>
+ * The association map is only read during rating, and must not be modified concurrently.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class ParallelProductRating {
+
+	/** the default number of products rated by one task */
+	public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+	final protected BatchProductRating batch;
+	final protected ForkJoinPool pool;
+	final protected int chunkSize;
+
+	/**
+	 * Constructor, that uses the common pool.
+	 * @param tagAssociations the tag associations map, that contains all association scores and tag pairs related to the calculation.
+	 */
+	public ParallelProductRating(AssociationMap tagAssociations) {
+		this(tagAssociations, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructor, with the current {@link ch.ethz.coss.algorithm.utilities.Scores}
+	 * @param tagAssociations the tag associations map, that contains all association scores and tag pairs related to the calculation.
+	 * @param pool the pool that runs the rating tasks
+	 * @param chunkSize the maximum number of products rated by one task
+	 */
+	public ParallelProductRating(AssociationMap tagAssociations, ForkJoinPool pool, int chunkSize) {
+		this(tagAssociations, ScoringConfig.fromScores(), pool, chunkSize);
+	}
+
+	/**
+	 * Constructor
+	 * @param tagAssociations the tag associations map, that contains all association scores and tag pairs related to the calculation.
+	 * @param config the scoring configuration of the ratings
+	 * @param pool the pool that runs the rating tasks
+	 * @param chunkSize the maximum number of products rated by one task
+	 */
+	public ParallelProductRating(AssociationMap tagAssociations, ScoringConfig config, ForkJoinPool pool, int chunkSize) {
+		if(chunkSize < 1) {
+			throw new IllegalArgumentException("chunk size must be positive: " + chunkSize);
+		}
+		this.batch = new BatchProductRating(tagAssociations, config);
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Rates all the given products for a user.
+	 * @param user the user object
+	 * @param products the products to rate
+	 * @return the recommendations, in the iteration order of the products
+	 */
+	public List<Recommendation> rateAll(User user, Collection<Product> products) {
+		List<Product> catalog = new ArrayList<>(products);
+		double[] rawProductRatings = rawProductRatings(user, catalog);
+		List<Recommendation> recommendations = new ArrayList<>(catalog.size());
+		for(int product = 0; product < catalog.size(); product++) {
+			recommendations.add(new Recommendation(user.getUid(), catalog.get(product).getId(), batch.getConfig().scale(rawProductRatings[product])));
+		}
+		return recommendations;
+	}
+
+	/**
+	 * Calculates the non-scaled ratings of all the given products for a user.
+	 * @param user the user object
+	 * @param products the products to rate
+	 * @return the non-scaled ratings, in the order of the products. NaN if there is no information about a product,
+	 * negative infinity for contradictions.
+	 */
+	public double[] rawProductRatings(User user, List<Product> products) {
+		//products with equal tags are rated once
+		List<Product> distinct = new ArrayList<>();
+		int[] distinctOf = BatchProductRating.distinctTagSets(products, distinct);
+		double[] rawProductRatings = new double[distinct.size()];
+		UserTagWeights weights = new UserTagWeights(user, batch.tagAssociations, batch.getConfig());
+		pool.invoke(new RatingTask(weights, distinct, rawProductRatings, 0, distinct.size()));
+		return BatchProductRating.fanOut(rawProductRatings, distinctOf);
+	}
+
+	/**
+	 * Rates the products between two positions, splitting in halves down to the chunk size.
+	 */
+	private class RatingTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final UserTagWeights weights;
+		private final List<Product> products;
+		private final double[] rawProductRatings;
+		private final int from;
+		private final int to;
+
+		RatingTask(UserTagWeights weights, List<Product> products, double[] rawProductRatings, int from, int to) {
+			this.weights = weights;
+			this.products = products;
+			this.rawProductRatings = rawProductRatings;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= chunkSize) {
+				double[] chunk = weights.rawProductRatings(products.subList(from, to));
+				System.arraycopy(chunk, 0, rawProductRatings, from, chunk.length);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new RatingTask(weights, products, rawProductRatings, from, middle),
+					new RatingTask(weights, products, rawProductRatings, middle, to));
+		}
+	}
+}
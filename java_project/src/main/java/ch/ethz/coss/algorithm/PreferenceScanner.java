@@ -0,0 +1,158 @@
+package ch.ethz.coss.algorithm;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ch.ethz.coss.algorithm.ontology.Association;
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.PreferenceTag;
+import ch.ethz.coss.algorithm.ontology.ProductTagIndex;
+import ch.ethz.coss.algorithm.ontology.ReferenceAssociation;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
+/**
+ * The inverted traversal of a preference over a list of products. Instead of filtering the associations of every
+ * preference tag once per product, the associations of each preference tag are visited once and pushed to all the
+ * products that hold the matched product tag. For every touched product the scan yields the summed normalized
+ * association over the preference tags, i.e. the nominator of equation 20 in the Appendix, together with the
+ * contradiction and extreme association values. Products that are not touched have no information for the preference.
+ * <p>
+ * A scanner reuses its buffers between scans and is not thread safe.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+class PreferenceScanner {
+
+	private final AssociationMap tagAssociations;
+	private final ProductTagIndex productTagIndex;
+	private final ScoringConfig config;
+
+	/* per product accumulators, indexed by product position */
+	private final double[] summedAssociations;
+	private final double[] summedNormalizedAssociations;
+	private final double[] minAssociations;
+	private final double[] maxAssociations;
+	private final boolean[] contradictions;
+	private final boolean[] touchedByTag;
+	private final boolean[] touchedByPreference;
+
+	/* products touched by the current preference tag and preference */
+	private final int[] tagTouched;
+	private int tagTouchedCount;
+	private final int[] preferenceTouched;
+	private int preferenceTouchedCount;
+
+	private int totalPreferenceTags;
+
+	PreferenceScanner(AssociationMap tagAssociations, ProductTagIndex productTagIndex, ScoringConfig config) {
+		this.tagAssociations = tagAssociations;
+		this.config = config;
+		this.productTagIndex = productTagIndex;
+		int products = productTagIndex.getProductCount();
+		this.summedAssociations = new double[products];
+		this.summedNormalizedAssociations = new double[products];
+		this.minAssociations = new double[products];
+		this.maxAssociations = new double[products];
+		this.contradictions = new boolean[products];
+		this.touchedByTag = new boolean[products];
+		this.touchedByPreference = new boolean[products];
+		this.tagTouched = new int[products];
+		this.preferenceTouched = new int[products];
+	}
+
+	/**
+	 * Scans a preference, replacing the results of the previous scan.
+	 * @param preference the preference
+	 * @param preferenceOffset the user offset of the preference, used for contradictions. NaN if unknown.
+	 * @return the number of products touched by the preference
+	 */
+	int scan(Preference preference, double preferenceOffset) {
+		for(int i = 0; i < preferenceTouchedCount; i++) {
+			int product = preferenceTouched[i];
+			touchedByPreference[product] = false;
+			summedNormalizedAssociations[product] = 0.0;
+			contradictions[product] = false;
+		}
+		preferenceTouchedCount = 0;
+
+		List<PreferenceTag> tags = preference.getTagList();
+		this.totalPreferenceTags = tags.size();
+		for(PreferenceTag tag : tags) {
+			for(Association association : tagAssociations.find(tag.getId())) {
+				int slot = productTagIndex.slot(association.getProductTagId());
+				if(slot < 0) {
+					continue;
+				}
+				double associationValue = association.getAssociationValue();
+				//contradiction activates only in the case offset and association are on extreme values and have opposite signs.
+				boolean isContradiction = config.isContradiction(preferenceOffset, associationValue);
+				for(int index = productTagIndex.start(slot); index < productTagIndex.end(slot); index++) {
+					int product = productTagIndex.positionAt(index);
+					if(!touchedByTag[product]) {
+						touchedByTag[product] = true;
+						tagTouched[tagTouchedCount++] = product;
+						summedAssociations[product] = 0.0;
+					}
+					if(!touchedByPreference[product]) {
+						touchedByPreference[product] = true;
+						preferenceTouched[preferenceTouchedCount++] = product;
+						minAssociations[product] = associationValue;
+						maxAssociations[product] = associationValue;
+					}
+					summedAssociations[product] += associationValue;
+					minAssociations[product] = Math.min(minAssociations[product], associationValue);
+					maxAssociations[product] = Math.max(maxAssociations[product], associationValue);
+					contradictions[product] |= isContradiction;
+				}
+			}
+
+			ReferenceAssociation reference = tagAssociations.getReferenceAssociation(tag.getId());
+			for(int i = 0; i < tagTouchedCount; i++) {
+				int product = tagTouched[i];
+				touchedByTag[product] = false;
+				summedNormalizedAssociations[product] += SustainabilityIndexMatrix.normalizedAssociation(summedAssociations[product], reference, config);
+			}
+			tagTouchedCount = 0;
+		}
+		return preferenceTouchedCount;
+	}
+
+	/**
+	 * Sorts the touched products of the last scan in ascending position.
+	 */
+	void sortTouched() {
+		Arrays.sort(preferenceTouched, 0, preferenceTouchedCount);
+	}
+
+	/**
+	 * @param i between 0 and the result of the last scan
+	 * @return the position of the i-th touched product
+	 */
+	int touched(int i) {
+		return preferenceTouched[i];
+	}
+
+	/**
+	 * @param product the position of a touched product
+	 * @return the sustainability index of the product for the scanned preference, equation 20 in the Appendix
+	 */
+	double averageAssociation(int product) {
+		return summedNormalizedAssociations[product]/totalPreferenceTags;
+	}
+
+	boolean isContradiction(int product) {
+		return contradictions[product];
+	}
+
+	double minAssociation(int product) {
+		return minAssociations[product];
+	}
+
+	double maxAssociation(int product) {
+		return maxAssociations[product];
+	}
+}
@@ -11,6 +11,7 @@ import ch.ethz.coss.algorithm.ontology.Product;
 import ch.ethz.coss.algorithm.ontology.User;
 import ch.ethz.coss.algorithm.utilities.Pair;
 import ch.ethz.coss.algorithm.utilities.Scores;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
 
 
 /**
@@ -27,6 +28,7 @@ public abstract class ProductRating {
 	final protected AssociationMap tagAssociations;
 	final protected User user;
 	final protected Product product;
+	final protected ScoringConfig config;
 
 	protected static Comparator<Pair<?, Double>> absDescComparator = new Comparator<Pair<?, Double>>() {
 		@Override
@@ -40,6 +42,18 @@ public abstract class ProductRating {
 	protected double productRating;
 	
 	public ProductRating(Map<Long, Product> products, AssociationMap tagAssociations, User user, Product product) {
+		this(products, tagAssociations, user, product, ScoringConfig.fromScores());
+	}
+
+	/**
+	 * @param products the products map that contains product ids and objects
+	 * @param tagAssociations the tag associations map
+	 * @param user the user object
+	 * @param product the product object
+	 * @param config the scoring configuration of the rating
+	 */
+	public ProductRating(Map<Long, Product> products, AssociationMap tagAssociations, User user, Product product, ScoringConfig config) {
+		this.config = config;
 		this.products = products;
 		this.tagAssociations = tagAssociations;
 		this.user = user;
@@ -99,6 +113,10 @@ public abstract class ProductRating {
 		return user;
 	}
 
+	public ScoringConfig getConfig() {
+		return config;
+	}
+
 	public Product getProduct(){
 		return this.product;
 	}
@@ -2,10 +2,10 @@ package ch.ethz.coss.algorithm;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.util.concurrent.AtomicDouble;
 
@@ -15,10 +15,11 @@ import ch.ethz.coss.algorithm.ontology.Preference;
 import ch.ethz.coss.algorithm.ontology.PreferenceTag;
 import ch.ethz.coss.algorithm.ontology.Product;
 import ch.ethz.coss.algorithm.ontology.ProductTagContribution;
-import ch.ethz.coss.algorithm.ontology.Tag;
+import ch.ethz.coss.algorithm.ontology.ReferenceAssociation;
 import ch.ethz.coss.algorithm.ontology.User;
 import ch.ethz.coss.algorithm.utilities.Pair;
 import ch.ethz.coss.algorithm.utilities.Scores;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
 
 
 /**
@@ -37,6 +38,7 @@ public class ProductRatingHypNorm extends ProductRating{
 	protected double productRating;
 	boolean noProductTagInformation;
 	boolean contradiction;
+	boolean explained;
 	final double summedOffset;
 	
 	/**
@@ -47,21 +49,30 @@ public class ProductRatingHypNorm extends ProductRating{
 	 * @param product the product object
 	 */
 	public ProductRatingHypNorm(Map<Long, Product> products, AssociationMap tagAssociations, User user, Product product) {
+		this(products, tagAssociations, user, product, ScoringConfig.fromScores());
+	}
+
+	/**
+	 * Constructor for the rating calculation with a scoring configuration. Calculation takes place in the constructor.
+	 * @param products the products map that contains product ids and objects. Used for reference association calcuations.
+	 * @param tagAssociations the tag associations map, that contains all association scores and tag pairs related to the calcuation.
+	 * @param user the user object
+	 * @param product the product object
+	 * @param config the scoring configuration, used instead of {@link Scores}
+	 */
+	public ProductRatingHypNorm(Map<Long, Product> products, AssociationMap tagAssociations, User user, Product product, ScoringConfig config) {
 
-		super(products, tagAssociations, user, product);
-		this.summedOffset = user.getTotalAbsoluteOffset();
+		super(products, tagAssociations, user, product, config);
+		this.summedOffset = user.getTotalAbsoluteOffset(config);
 
-		// initializations
-		this.preferenceContributions = new ConcurrentHashMap<>();
-		this.productTagContributions = new ConcurrentHashMap<>();
+		// initializations, an instance is confined to the thread that rates the product
+		this.preferenceContributions = new HashMap<>();
+		this.productTagContributions = new HashMap<>();
 		this.noProductTagInformation = true;
 		this.contradiction = false;
+		this.explained = false;
 		
-		double rawProductRating = rawProductRating();
-		// scale the product rating as shown in equation 23 of the Appendix
-		this.productRating = Scores.meanProductRating + (Scores.ratingScale * rawProductRating);
-		//handles strict preference case
-		this.productRating = Double.isInfinite(this.productRating) && productRating < 0 ? 0 : this.productRating;
+		this.productRating = config.scale(rawProductRating());
 		
 
 	}
@@ -101,17 +112,21 @@ public class ProductRatingHypNorm extends ProductRating{
 			System.out.println("summedOffset");
 			return Double.NaN;
 		}
+		
+		//none of the product tags is associated, so no preference can reach the product
+		if(!tagAssociations.hasTagInformation(product)) {
+			return Double.NaN;
+		}
 
 		
 		for (Entry<Preference, Double> preferenceAndScore : user.getPreferences().entrySet()) {
 			Preference preference = preferenceAndScore.getKey();
 			double preferenceScore = preferenceAndScore.getValue();
-			double preferenceOffset = preferenceScore - Scores.meanUserPreference;
+			double preferenceOffset = preferenceScore - config.getMeanUserPreference();
 			double summedNormalizedAssociation = 0.0;
-			double totalPreferenceTags = preference.getTags().size();
+			double totalPreferenceTags = preference.getTagCount();
 			
-			for(Tag tag : preference.getTags()) {
-				PreferenceTag preferenceTag = (PreferenceTag) tag;
+			for(PreferenceTag preferenceTag : preference.getTagList()) {
 				//the aggregate association, showcased in equation 15 of Appendix.
 				double summedAssociation = 0.0; 
 				List<Association> preferenceTagAssociations = tagAssociations.find(preferenceTag.getId());
@@ -125,31 +140,24 @@ public class ProductRatingHypNorm extends ProductRating{
 					summedAssociation += association.getAssociationValue();
 					//contradiction activates only in the case offset and association are on extreme values and have opposite signs.
 					//used for strict preferences
-					boolean isContradiction = preferenceOffset*association.getAssociationValue() == Scores.contradictionAssociationOffset;
+					boolean isContradiction = config.isContradiction(preferenceOffset, association.getAssociationValue());
 		
 					contradiction |= isContradiction;;
 				}
 				
 				//clipping for aggregate association needed as shown in equation 26 of the Appendix
-				double aggregatedAssociation = normalize(summedAssociation);
+				double aggregatedAssociation = config.normalize(summedAssociation);
 				
 				//calculation of reference association as shown in equation 19 of the Appendix
-				double maxAssociation = 0.0;
-				double minAssociation = 0.0;
-				
-				for(Association association : preferenceTagAssociations) {
-					double associationValue = association.getAssociationValue();
-					if (associationValue > 0) {
-						maxAssociation += associationValue;
-					} else {
-						minAssociation += associationValue;
-					}			
-				}
+				//the sums depend only on the ontology and are cached in the association map
+				ReferenceAssociation referenceAssociation = tagAssociations.getReferenceAssociation(preferenceTag.getId());
+				double maxAssociation = referenceAssociation.getPositiveSum();
+				double minAssociation = referenceAssociation.getNegativeSum();
 				
 				//clipping for reference association as shown in equation 17,18 of the Appendix
 				//absolute is used in accordance to equation 19 in Appendix
-				maxAssociation = Math.abs(normalize(maxAssociation));
-				minAssociation = Math.abs(normalize(minAssociation));
+				maxAssociation = Math.abs(config.normalize(maxAssociation));
+				minAssociation = Math.abs(config.normalize(minAssociation));
 				
 				
 				//clipping for reference association as shown in equation 19 of the Appendix
@@ -162,18 +170,7 @@ public class ProductRatingHypNorm extends ProductRating{
 				//preparing nominator for mean association over preference tags in accordance to
 				//equation 20 in Appendix.
 				summedNormalizedAssociation += normalizedAssociation;		
-				
-				
-				//for contributions
-				for(Association association : productAssociations) {
-					productTagContributions.putIfAbsent(association.getProductTagid(), new ProductTagContribution(product.getId(), summedOffset, Scores.ratingScale));
-					//contradiction activates only in the case offset and association are on extreme values and have opposite signs.
-					boolean isContradiction = preferenceOffset*association.getAssociationValue() == Scores.contradictionAssociationOffset;
-					productTagContributions.get(association.getProductTagId()).contributeAssociation(association.getAssociationValue(), summedAssociation, preferenceOffset, 
-							summedAssociation > 0 ? maxAssociation : minAssociation, preference, association.getPreferenceTagId(), isContradiction);
-				}
-				
-				
+
 			}
 			//calculation of equation 20 in the Appendix, also referred to as sustainability index of 
 			//product for preference
@@ -181,9 +178,6 @@ public class ProductRatingHypNorm extends ProductRating{
 			//This is done because preferences without preference tags or contraditions are assigned non finite values.
 			double preferenceContribution =  Double.isFinite(averageAssociation) ? averageAssociation*preferenceOffset : 0;
 
-			
-			preferenceContributions.putIfAbsent(preference, new AtomicDouble());
-			preferenceContributions.get(preference).addAndGet(Scores.ratingScale*preferenceContribution/summedOffset);
 			summedAverageAssociation +=  preferenceContribution;
 		}
 		
@@ -203,6 +197,60 @@ public class ProductRatingHypNorm extends ProductRating{
 	
 	
 	
+	/**
+	 * Calculates the preference and product tag contributions, on the first access to any of them. Few ratings are
+	 * ever explained, so the contributions are not calculated with the rating but recomputed with the same steps.
+	 * The user preferences and the tag associations should not change between the rating and the first access. Not thread safe, as the rest of the instance.
+	 */
+	protected void explain() {
+		if(explained) {
+			return;
+		}
+		explained = true;
+		if(summedOffset == 0.0) {
+			return;
+		}
+
+		for (Entry<Preference, Double> preferenceAndScore : user.getPreferences().entrySet()) {
+			Preference preference = preferenceAndScore.getKey();
+			double preferenceOffset = preferenceAndScore.getValue() - config.getMeanUserPreference();
+			double summedNormalizedAssociation = 0.0;
+			List<PreferenceTag> preferenceTags = preference.getTagList();
+			int totalPreferenceTags = preferenceTags.size();
+
+			for(PreferenceTag tag : preferenceTags) {
+				List<Association> productAssociations = filterOnProduct(this.product, tagAssociations.find(tag.getId()));
+				double summedAssociation = 0.0;
+				for(Association association : productAssociations) {
+					summedAssociation += association.getAssociationValue();
+				}
+
+				double aggregatedAssociation = config.normalize(summedAssociation);
+				ReferenceAssociation referenceAssociation = tagAssociations.getReferenceAssociation(tag.getId());
+				double maxAssociation = Math.abs(config.normalize(referenceAssociation.getPositiveSum()));
+				double minAssociation = Math.abs(config.normalize(referenceAssociation.getNegativeSum()));
+				double normalizedAssociation = 0;
+				if(aggregatedAssociation != 0) {
+					normalizedAssociation = aggregatedAssociation > 0 ? aggregatedAssociation/maxAssociation : aggregatedAssociation/minAssociation;
+				}
+				summedNormalizedAssociation += normalizedAssociation;
+
+				for(Association association : productAssociations) {
+					productTagContributions.putIfAbsent(association.getProductTagid(), new ProductTagContribution(product.getId(), summedOffset, config));
+					//contradiction activates only in the case offset and association are on extreme values and have opposite signs.
+					boolean isContradiction = config.isContradiction(preferenceOffset, association.getAssociationValue());
+					productTagContributions.get(association.getProductTagId()).contributeAssociationWithTagCount(association.getAssociationValue(), summedAssociation, preferenceOffset, 
+							summedAssociation > 0 ? maxAssociation : minAssociation, preference, totalPreferenceTags, isContradiction);
+				}
+			}
+			double averageAssociation = summedNormalizedAssociation/totalPreferenceTags;
+			double preferenceContribution =  Double.isFinite(averageAssociation) ? averageAssociation*preferenceOffset : 0;
+
+			preferenceContributions.putIfAbsent(preference, new AtomicDouble());
+			preferenceContributions.get(preference).addAndGet(config.getRatingScale()*preferenceContribution/summedOffset);
+		}
+	}
+
 	/**
 	 * For all the associations of a preference tag, return the ones that are mapped to the product tags of the 
 	 * given product.
@@ -211,25 +259,25 @@ public class ProductRatingHypNorm extends ProductRating{
 	 * @return
 	 */
 	public static List<Association> filterOnProduct(Product product, List<Association> preferenceTagAssociations){
-		List<Association> filtered = new ArrayList<>();
-
-		
-		for (Association preferenceTagAssociation : preferenceTagAssociations) {
-			if(product.getTagIds().contains(preferenceTagAssociation.getProductTagid())) {
-				filtered.add(preferenceTagAssociation);				
-			}
-		}
-		return filtered;
+		return product.getTagSet().filter(preferenceTagAssociations);
 	}
 	
 	/**
-	 * The clipping function for aggregate association scores.
+	 * Scales a non-scaled rating to the rating range with the current {@link Scores}, see {@link ScoringConfig#scale(double)}.
+	 * @param rawProductRating the non-scaled rating
+	 * @return the product rating
+	 */
+	protected static double scale(double rawProductRating) {
+		return ScoringConfig.fromScores().scale(rawProductRating);
+	}
+
+	/**
+	 * The clipping function for aggregate association scores, with the current {@link Scores}.
 	 * @param associationScore the association score or the value to be clipped.
 	 * @return
 	 */
 	protected static double normalize(double associationScore) {
-		return associationScore < -Scores.maxAllowedAssociation ? -Scores.maxAllowedAssociation
-				: (associationScore > Scores.maxAllowedAssociation ? Scores.maxAllowedAssociation : associationScore);
+		return ScoringConfig.fromScores().normalize(associationScore);
 	}
 
 	/* Product tag contributions */
@@ -245,6 +293,7 @@ public class ProductRatingHypNorm extends ProductRating{
 	 */
 	@Override
 	public List<Pair<Long, Double>> getProductTagContribution() {
+		explain();
 		List<Pair<Long, Double>> result = new ArrayList<>();
 		for(Entry<Long, ProductTagContribution> e : productTagContributions.entrySet()) {
 			result.add(new Pair<Long, Double>(e.getKey(), e.getValue().getTotalContribution().doubleValue()));
@@ -284,7 +333,8 @@ public class ProductRatingHypNorm extends ProductRating{
 	 *         be zero.
 	 */
 	public Map<Preference, List<Pair<Long, Double>>> getProductTagContributionPerPreference() {
-	Map<Preference, List<Pair<Long, Double>>> sortedProductTagContributions = new ConcurrentHashMap<>();		
+		explain();
+	Map<Preference, List<Pair<Long, Double>>> sortedProductTagContributions = new HashMap<>();		
 		
 		for(Entry<Long, ProductTagContribution> e : productTagContributions.entrySet()) {
 			Map<Preference, AtomicDouble> toPreferenceContributions = e.getValue().getContributionToPreferences();
@@ -305,7 +355,8 @@ public class ProductRatingHypNorm extends ProductRating{
 	 * @return the List of the contributions per product for each sustainability index.
 	 */
 	public Map<Preference, List<Pair<Long, Double>>> getProductTagContributionPerPreferencePercentages() {
-		Map<Preference, List<Pair<Long, Double>>> sortedProductTagContributions = new ConcurrentHashMap<>();
+		explain();
+		Map<Preference, List<Pair<Long, Double>>> sortedProductTagContributions = new HashMap<>();
 		
 		
 		for(Entry<Long, ProductTagContribution> e : productTagContributions.entrySet()) {
@@ -340,6 +391,7 @@ public class ProductRatingHypNorm extends ProductRating{
 	 *         the product rating should be zero.
 	 */
 	public List<Pair<Preference, Double>> getPreferenceContributions() {
+		explain();
 		List<Pair<Preference, Double>> result = new ArrayList<>();
 		for( Entry<Preference, AtomicDouble> e : preferenceContributions.entrySet()) {
 			result.add(new Pair<Preference, Double>(e.getKey(), e.getValue().doubleValue()));
@@ -377,16 +429,18 @@ public class ProductRatingHypNorm extends ProductRating{
 	 */
 	protected double getPreferenceContribution(Preference preference) {
 		double rawContribution = getRawPreferenceContribution(preference);
-		return Scores.ratingScale * rawContribution;
+		return config.getRatingScale() * rawContribution;
 	}
 
 	/*Getters and Setters*/
 	protected double getRawPreferenceContribution(Preference preference) {
+		explain();
 		// this becomes NaN if the the user has set no preferences
 		return this.preferenceContributions.get(preference).doubleValue();
 	}
 
 	public Map<Long, ProductTagContribution> getProductTagContributions() {
+		explain();
 		return productTagContributions;
 	}
 
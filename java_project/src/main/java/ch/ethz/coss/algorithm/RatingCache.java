@@ -0,0 +1,237 @@
+package ch.ethz.coss.algorithm;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
+/**
+ * A bounded cache of product ratings in front of {@link ProductRatingHypNorm}. An entry is kept per user id and product
+ * id, together with the version stamps of the user preferences, the tags of these preferences, the product tags and
+ * the association map at the time of rating. The stamps are unique across objects, so another user object with the
+ * same uid, or a deserialized copy, never matches the entry. A lookup with different stamps is a miss and replaces the entry, so a
+ * rating is never served after {@link User#addPreference(Preference, double)}, {@link Product#addTagId(long)},
+ * {@link Preference#addTag(ch.ethz.coss.algorithm.ontology.PreferenceTag)} or {@link AssociationMap#addPair(ch.ethz.coss.algorithm.ontology.Association)}.
+ * When the cache is full, the entry chosen by the {@link Eviction} policy is removed.
+ * <p>
+ * The cache is thread safe. The stamps are volatile, so a lookup on any thread sees the stamp of a change that
+ * completed before it, and an entry of the older state is not served. Ratings are calculated outside the lock, so
+ * concurrent misses of the same pair may both calculate it.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class RatingCache {
+
+	/**
+	 * The entry removed when the cache is full.
+	 */
+	public enum Eviction {
+		/** the least recently used entry */
+		LRU,
+		/** the least frequently used entry, the least recently used among equally frequent entries */
+		LFU
+	}
+
+	final protected Map<Long, Product> products;
+	final protected AssociationMap tagAssociations;
+	final protected ScoringConfig config;
+	final protected int maximumSize;
+	final protected Eviction eviction;
+
+	private final Map<Key, Entry> entries = new HashMap<>();
+	/* the entries in eviction order, the next one to evict first */
+	private final TreeSet<Entry> evictionOrder;
+	private long tick;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Constructor, with the current {@link ch.ethz.coss.algorithm.utilities.Scores}
+	 * @param products the products map that contains product ids and objects
+	 * @param tagAssociations the tag associations map
+	 * @param maximumSize the maximum number of cached ratings
+	 * @param eviction the eviction policy
+	 */
+	public RatingCache(Map<Long, Product> products, AssociationMap tagAssociations, int maximumSize, Eviction eviction) {
+		this(products, tagAssociations, ScoringConfig.fromScores(), maximumSize, eviction);
+	}
+
+	/**
+	 * Constructor
+	 * @param products the products map that contains product ids and objects
+	 * @param tagAssociations the tag associations map
+	 * @param config the scoring configuration of the ratings
+	 * @param maximumSize the maximum number of cached ratings
+	 * @param eviction the eviction policy
+	 */
+	public RatingCache(Map<Long, Product> products, AssociationMap tagAssociations, ScoringConfig config, int maximumSize, Eviction eviction) {
+		if(maximumSize < 1) {
+			throw new IllegalArgumentException("maximum size must be positive: " + maximumSize);
+		}
+		this.products = products;
+		this.tagAssociations = tagAssociations;
+		this.config = config;
+		this.maximumSize = maximumSize;
+		this.eviction = eviction;
+		this.evictionOrder = new TreeSet<>((e1, e2) -> {
+			if(eviction == Eviction.LFU && e1.frequency != e2.frequency) {
+				return Long.compare(e1.frequency, e2.frequency);
+			}
+			return Long.compare(e1.lastUse, e2.lastUse);
+		});
+	}
+
+	/**
+	 * @param user the user object
+	 * @param product the product object
+	 * @return the scaled product rating, from the cache if the user, the product and the ontology did not change
+	 */
+	public double productRating(User user, Product product) {
+		Key key = new Key(user.getUid(), product.getId());
+		long userVersion = user.getPreferenceVersion();
+		long preferenceVersion = preferenceVersion(user);
+		long productVersion = product.getTagVersion();
+		long ontologyVersion = tagAssociations.getVersion();
+		synchronized(this) {
+			Entry entry = entries.get(key);
+			if(entry != null && entry.isCurrent(userVersion, preferenceVersion, productVersion, ontologyVersion)) {
+				hits++;
+				evictionOrder.remove(entry);
+				entry.frequency++;
+				entry.lastUse = ++tick;
+				evictionOrder.add(entry);
+				return entry.productRating;
+			}
+			misses++;
+		}
+
+		double productRating = new ProductRatingHypNorm(products, tagAssociations, user, product, config).productRating();
+		synchronized(this) {
+			Entry previous = entries.remove(key);
+			if(previous != null) {
+				evictionOrder.remove(previous);
+			} else if(entries.size() == maximumSize) {
+				Entry evicted = evictionOrder.pollFirst();
+				entries.remove(evicted.key);
+				evictions++;
+			}
+			Entry entry = new Entry(key, userVersion, preferenceVersion, productVersion, ontologyVersion, productRating);
+			entry.lastUse = ++tick;
+			entries.put(key, entry);
+			evictionOrder.add(entry);
+		}
+		return productRating;
+	}
+
+	/**
+	 * @param user the user object
+	 * @param product the product object
+	 * @return the recommendation of the product to the user
+	 */
+	public Recommendation recommend(User user, Product product) {
+		return new Recommendation(user.getUid(), product.getId(), productRating(user, product));
+	}
+
+	/**
+	 * The version of the tags of the user preferences. A new stamp is larger than all earlier ones, so the maximum
+	 * changes whenever the tags of one of the preferences do.
+	 */
+	private static long preferenceVersion(User user) {
+		long version = 0;
+		List<Preference> preferences = user.getPreferenceList();
+		for(int i = 0; i < preferences.size(); i++) {
+			version = Math.max(version, preferences.get(i).getTagVersion());
+		}
+		return version;
+	}
+
+	/**
+	 * Removes all entries. The counters are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		evictionOrder.clear();
+	}
+
+	/*Getters*/
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public ScoringConfig getConfig() {
+		return config;
+	}
+
+	private static final class Key {
+		private final String uid;
+		private final long pid;
+
+		Key(String uid, long pid) {
+			this.uid = uid;
+			this.pid = pid;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return pid == key.pid && uid.equals(key.uid);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31*uid.hashCode() + Long.hashCode(pid);
+		}
+	}
+
+	private static final class Entry {
+		private final Key key;
+		private final long userVersion;
+		private final long preferenceVersion;
+		private final long productVersion;
+		private final long ontologyVersion;
+		private final double productRating;
+		private long frequency = 1;
+		private long lastUse;
+
+		Entry(Key key, long userVersion, long preferenceVersion, long productVersion, long ontologyVersion, double productRating) {
+			this.key = key;
+			this.userVersion = userVersion;
+			this.preferenceVersion = preferenceVersion;
+			this.productVersion = productVersion;
+			this.ontologyVersion = ontologyVersion;
+			this.productRating = productRating;
+		}
+
+		boolean isCurrent(long userVersion, long preferenceVersion, long productVersion, long ontologyVersion) {
+			return this.userVersion == userVersion && this.preferenceVersion == preferenceVersion
+					&& this.productVersion == productVersion && this.ontologyVersion == ontologyVersion;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package ch.ethz.coss.algorithm;
+
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+import ch.ethz.coss.algorithm.ontology.CompiledAssociations;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.PreferenceTag;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
+/**
+ * A stateless rating engine over a {@link CompiledAssociations} snapshot, that calculates only the product rating.
+ * Users and products are compiled once to primitive arrays of ordinals, after which a rating performs no heap
+ * allocation: the associations of each preference tag are looked up by binary search in its row, for every product tag
+ * of the product. The ratings are the ones of {@link ProductRatingHypNorm}. Explanations, i.e. the preference and
+ * product tag contributions, are not calculated and remain available through {@link ProductRatingHypNorm}.
+ * <p>
+ * The engine and the compiled users are immutable and can be shared between threads.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class RatingEngine {
+
+	final protected CompiledAssociations associations;
+	final protected ScoringConfig config;
+
+	/**
+	 * Constructor, with the current {@link ch.ethz.coss.algorithm.utilities.Scores}
+	 * @param associations the compiled tag associations
+	 */
+	public RatingEngine(CompiledAssociations associations) {
+		this(associations, ScoringConfig.fromScores());
+	}
+
+	/**
+	 * Constructor
+	 * @param associations the compiled tag associations
+	 * @param config the scoring configuration of the ratings
+	 */
+	public RatingEngine(CompiledAssociations associations, ScoringConfig config) {
+		this.associations = associations;
+		this.config = config;
+	}
+
+	/**
+	 * The preferences of a user as ordinals of the compiled associations.
+	 */
+	public static final class CompiledUser {
+		private final String uid;
+		private final double summedOffset;
+		/* per preference */
+		private final double[] preferenceOffsets;
+		private final int[] tagOffsets;
+		/* preference tag ordinals of all preferences, -1 for preference tags without associations */
+		private final int[] preferenceTags;
+
+		private CompiledUser(String uid, double summedOffset, double[] preferenceOffsets, int[] tagOffsets, int[] preferenceTags) {
+			this.uid = uid;
+			this.summedOffset = summedOffset;
+			this.preferenceOffsets = preferenceOffsets;
+			this.tagOffsets = tagOffsets;
+			this.preferenceTags = preferenceTags;
+		}
+
+		public String getUid() {
+			return uid;
+		}
+
+		public double getSummedOffset() {
+			return summedOffset;
+		}
+	}
+
+	/**
+	 * Compiles the preferences of a user, with the offsets from the mean user preference of the engine configuration.
+	 * The user has to be compiled again after changing the preferences.
+	 * @param user the user object
+	 * @return the compiled user
+	 */
+	public CompiledUser compile(User user) {
+		int preferenceCount = user.getPreferences().size();
+		double[] preferenceOffsets = new double[preferenceCount];
+		int[] tagOffsets = new int[preferenceCount + 1];
+		int[] preferenceTags = new int[16];
+		int preference = 0;
+		for(Entry<Preference, Double> preferenceAndScore : user.getPreferences().entrySet()) {
+			preferenceOffsets[preference] = preferenceAndScore.getValue() - config.getMeanUserPreference();
+			int tagCount = tagOffsets[preference];
+			//same tag order as the rating of ProductRatingHypNorm
+			for(PreferenceTag tag : preferenceAndScore.getKey().getTagList()) {
+				if(tagCount == preferenceTags.length) {
+					preferenceTags = Arrays.copyOf(preferenceTags, tagCount << 1);
+				}
+				preferenceTags[tagCount++] = associations.preferenceTagOrdinal(tag.getId());
+			}
+			tagOffsets[++preference] = tagCount;
+		}
+		return new CompiledUser(user.getUid(), user.getTotalAbsoluteOffset(config), preferenceOffsets, tagOffsets,
+				Arrays.copyOf(preferenceTags, tagOffsets[preferenceCount]));
+	}
+
+	/**
+	 * Compiles the tags of a product.
+	 * @param product the product object
+	 * @return the sorted ordinals of the product tags that have associations
+	 */
+	public int[] compile(Product product) {
+		int[] productTags = new int[product.getTagIds().size()];
+		int count = 0;
+		for(Long tagId : product.getTagIds()) {
+			int ordinal = associations.productTagOrdinal(tagId);
+			if(ordinal >= 0) {
+				productTags[count++] = ordinal;
+			}
+		}
+		productTags = Arrays.copyOf(productTags, count);
+		Arrays.sort(productTags);
+		return productTags;
+	}
+
+	/**
+	 * Calculate the non-scaled product rating, without allocations.
+	 * @param user the compiled user
+	 * @param productTags the compiled product tags, see {@link #compile(Product)}
+	 * @return the non-scaled rating. NaN if there is no information about the product, negative infinity for contradictions.
+	 */
+	public double rawProductRating(CompiledUser user, int[] productTags) {
+		if(user.summedOffset == 0.0) {
+			return Double.NaN;
+		}
+
+		double summedAverageAssociation = 0.0;
+		boolean information = false;
+		boolean contradiction = false;
+		for(int preference = 0; preference < user.preferenceOffsets.length; preference++) {
+			double preferenceOffset = user.preferenceOffsets[preference];
+			double summedNormalizedAssociation = 0.0;
+			int tagStart = user.tagOffsets[preference];
+			int tagEnd = user.tagOffsets[preference + 1];
+			for(int tag = tagStart; tag < tagEnd; tag++) {
+				int preferenceTag = user.preferenceTags[tag];
+				if(preferenceTag < 0) {
+					continue;
+				}
+				double summedAssociation = 0.0;
+				for(int productTag : productTags) {
+					int entry = associations.entryOf(preferenceTag, productTag);
+					if(entry < 0) {
+						continue;
+					}
+					double associationValue = associations.valueAt(entry);
+					information = true;
+					summedAssociation += associationValue;
+					contradiction |= config.isContradiction(preferenceOffset, associationValue);
+				}
+				summedNormalizedAssociation += SustainabilityIndexMatrix.normalizedAssociation(summedAssociation,
+						associations.positiveSum(preferenceTag), associations.negativeSum(preferenceTag), config);
+			}
+			//equation 20 in the Appendix
+			double averageAssociation = summedNormalizedAssociation/(tagEnd - tagStart);
+			summedAverageAssociation += Double.isFinite(averageAssociation) ? averageAssociation*preferenceOffset : 0;
+		}
+
+		if(!information) {
+			return Double.NaN;
+		} else if(contradiction) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		return summedAverageAssociation/user.summedOffset;
+	}
+
+	/**
+	 * @param user the compiled user
+	 * @param productTags the compiled product tags, see {@link #compile(Product)}
+	 * @return the scaled product rating
+	 */
+	public double productRating(CompiledUser user, int[] productTags) {
+		return config.scale(rawProductRating(user, productTags));
+	}
+}
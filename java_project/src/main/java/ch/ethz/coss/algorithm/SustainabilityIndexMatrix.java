@@ -0,0 +1,441 @@
+package ch.ethz.coss.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.ProductTagIndex;
+import ch.ethz.coss.algorithm.ontology.ReferenceAssociation;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.LongIntHashMap;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
+/**
+ * A user independent rating engine. The sustainability index of a product for a preference, i.e. the average
+ * normalized aggregate association over the preference tags shown in equation 20 of the Appendix, depends only on the
+ * preference, the product and the ontology. This class precomputes it for all preference and product pairs in a sparse
+ * matrix, together with the smallest and largest matched association values that are needed to detect contradictions.
+ * A rating is then the dot product of the user offsets with the column of the product, divided by the summed offset.
+ * <p>
+ * Contradictions are detected on the extreme matched association values, which is equivalent to the check of
+ * {@link ProductRatingHypNorm} as long as association values lie within the allowed association range.
+ * The matrix is read only after construction and safe to share between threads. It has to be rebuilt when the
+ * ontology, the preferences or the product tags change.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class SustainabilityIndexMatrix {
+
+	private final ScoringConfig config;
+
+	/* preference and product ordinals */
+	private final Map<Preference, Integer> preferenceOrdinals;
+	private final LongIntHashMap productOrdinals;
+	private final long[] productIds;
+
+	/* cells of each preference row, sorted by product ordinal. Only products with matching associations have a cell */
+	private final int[] offsets;
+	private final int[] cellProducts;
+	private final double[] cellIndices;
+	private final double[] cellMinAssociations;
+	private final double[] cellMaxAssociations;
+
+	/* upper bound of the absolute non-scaled rating per product ordinal, and the product ordinals by descending bound */
+	private final double[] bounds;
+	private final int[] productsByBound;
+
+	/**
+	 * Constructor, precomputes the sustainability indices.
+	 * @param preferences all the preferences that users can answer
+	 * @param products the products map that contains product ids and objects
+	 * @param tagAssociations the tag associations map
+	 */
+	public SustainabilityIndexMatrix(Collection<Preference> preferences, Map<Long, Product> products, AssociationMap tagAssociations) {
+		this(preferences, products, tagAssociations, ScoringConfig.fromScores());
+	}
+
+	/**
+	 * Constructor, precomputes the sustainability indices.
+	 * @param preferences all the preferences that users can answer
+	 * @param products the products map that contains product ids and objects
+	 * @param tagAssociations the tag associations map
+	 * @param config the scoring configuration of the indices and the ratings
+	 */
+	public SustainabilityIndexMatrix(Collection<Preference> preferences, Map<Long, Product> products, AssociationMap tagAssociations, ScoringConfig config) {
+		this.config = config;
+		this.productIds = new long[products.size()];
+		int ordinal = 0;
+		for(Long productId : products.keySet()) {
+			productIds[ordinal++] = productId;
+		}
+		Arrays.sort(productIds);
+		this.productOrdinals = new LongIntHashMap(productIds.length);
+		for(ordinal = 0; ordinal < productIds.length; ordinal++) {
+			productOrdinals.put(productIds[ordinal], ordinal);
+		}
+
+		List<Product> catalog = new ArrayList<>(productIds.length);
+		for(long productId : productIds) {
+			catalog.add(products.get(productId));
+		}
+		PreferenceScanner scanner = new PreferenceScanner(tagAssociations, new ProductTagIndex(catalog), config);
+
+		this.preferenceOrdinals = new HashMap<>();
+		this.offsets = new int[preferences.size() + 1];
+		Cells cells = new Cells();
+		for(Preference preference : preferences) {
+			int preferenceOrdinal = preferenceOrdinals.size();
+			preferenceOrdinals.put(preference, preferenceOrdinal);
+			//the offset is unknown, contradictions are derived from the extreme associations when rating
+			int touched = scanner.scan(preference, Double.NaN);
+			scanner.sortTouched();
+			for(int i = 0; i < touched; i++) {
+				int productOrdinal = scanner.touched(i);
+				cells.add(productOrdinal, scanner.averageAssociation(productOrdinal), scanner.minAssociation(productOrdinal), scanner.maxAssociation(productOrdinal));
+			}
+			offsets[preferenceOrdinal + 1] = cells.size;
+		}
+		this.cellProducts = Arrays.copyOf(cells.products, cells.size);
+		this.cellIndices = Arrays.copyOf(cells.indices, cells.size);
+		this.cellMinAssociations = Arrays.copyOf(cells.minAssociations, cells.size);
+		this.cellMaxAssociations = Arrays.copyOf(cells.maxAssociations, cells.size);
+
+		//the rating is a weighted average of the indices with weights |offset|/summedOffset, so it cannot exceed the largest absolute index
+		this.bounds = new double[productIds.length];
+		for(int cell = 0; cell < cellProducts.length; cell++) {
+			bounds[cellProducts[cell]] = Math.max(bounds[cellProducts[cell]], Math.abs(cellIndices[cell]));
+		}
+		long[] boundAndOrdinal = new long[productIds.length];
+		for(ordinal = 0; ordinal < productIds.length; ordinal++) {
+			//non-negative doubles keep their order in their raw bits. The bound is rounded up to the upper 32 bits, which
+			//are inverted to sort descending, so that the sort order agrees with the stored bounds.
+			long boundBits = Double.doubleToLongBits(bounds[ordinal]) | 0xFFFFFFFFL;
+			bounds[ordinal] = Double.longBitsToDouble(boundBits);
+			boundAndOrdinal[ordinal] = ((Long.MAX_VALUE - boundBits) & ~0xFFFFFFFFL) | ordinal;
+		}
+		Arrays.sort(boundAndOrdinal);
+		this.productsByBound = new int[productIds.length];
+		for(int i = 0; i < productIds.length; i++) {
+			productsByBound[i] = (int) boundAndOrdinal[i];
+		}
+	}
+
+	/**
+	 * The normalized aggregate association of a preference tag, equations 15-19 of the Appendix.
+	 * @param summedAssociation the aggregate association of the product for the preference tag
+	 * @param reference the reference association of the preference tag
+	 * @param config the scoring configuration
+	 * @return the normalized association
+	 */
+	static double normalizedAssociation(double summedAssociation, ReferenceAssociation reference, ScoringConfig config) {
+		return normalizedAssociation(summedAssociation, reference.getPositiveSum(), reference.getNegativeSum(), config);
+	}
+
+	/**
+	 * The normalized aggregate association of a preference tag, equations 15-19 of the Appendix.
+	 * @param summedAssociation the aggregate association of the product for the preference tag
+	 * @param positiveSum the sum of the positive associations of the preference tag
+	 * @param negativeSum the sum of the negative associations of the preference tag
+	 * @param config the scoring configuration
+	 * @return the normalized association
+	 */
+	static double normalizedAssociation(double summedAssociation, double positiveSum, double negativeSum, ScoringConfig config) {
+		double aggregatedAssociation = config.normalize(summedAssociation);
+		if(aggregatedAssociation == 0) {
+			return 0;
+		}
+		return aggregatedAssociation > 0 ? aggregatedAssociation/Math.abs(config.normalize(positiveSum))
+				: aggregatedAssociation/Math.abs(config.normalize(negativeSum));
+	}
+
+	/**
+	 * Whether a matched association contradicts a strict preference, as in {@link ProductRatingHypNorm#rawProductRating()}.
+	 * @param preferenceOffset the user offset of the preference
+	 * @param minAssociation the smallest matched association value
+	 * @param maxAssociation the largest matched association value
+	 * @return true if the extreme associations contradict the offset
+	 */
+	private boolean isContradiction(double preferenceOffset, double minAssociation, double maxAssociation) {
+		return config.isContradiction(preferenceOffset, minAssociation) || config.isContradiction(preferenceOffset, maxAssociation);
+	}
+
+	/* Rating */
+
+	/**
+	 * Calculate the non-scaled rating of a product for a user.
+	 * @param user the user object
+	 * @param product the product object, that was in the products map of the matrix
+	 * @return the non-scaled rating. NaN if there is no information about the product, negative infinity for contradictions.
+	 */
+	public double rawProductRating(User user, Product product) {
+		int[] preferences = preferenceOrdinals(user);
+		return rawProductRating(preferences, preferenceOffsets(user, preferences.length), user.getTotalAbsoluteOffset(config), productOrdinal(product.getId()));
+	}
+
+	/**
+	 * Calculate the non-scaled rating of a product, for user preferences given by ordinal.
+	 * @param preferences the ordinals of the user preferences
+	 * @param preferenceOffsets the offsets of the user preferences, in the same order
+	 * @param summedOffset the total absolute offset of the user
+	 * @param productOrdinal the ordinal of the product
+	 * @return the non-scaled rating. NaN if there is no information about the product, negative infinity for contradictions.
+	 */
+	double rawProductRating(int[] preferences, double[] preferenceOffsets, double summedOffset, int productOrdinal) {
+		if(summedOffset == 0.0) {
+			return Double.NaN;
+		}
+
+		double summedAverageAssociation = 0.0;
+		boolean information = false;
+		boolean contradiction = false;
+		for(int i = 0; i < preferences.length; i++) {
+			int cell = Arrays.binarySearch(cellProducts, offsets[preferences[i]], offsets[preferences[i] + 1], productOrdinal);
+			if(cell < 0) {
+				continue;
+			}
+			double preferenceOffset = preferenceOffsets[i];
+			information = true;
+			contradiction |= isContradiction(preferenceOffset, cellMinAssociations[cell], cellMaxAssociations[cell]);
+			double averageAssociation = cellIndices[cell];
+			summedAverageAssociation += Double.isFinite(averageAssociation) ? averageAssociation*preferenceOffset : 0;
+		}
+
+		if(!information) {
+			return Double.NaN;
+		} else if(contradiction) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		return summedAverageAssociation/summedOffset;
+	}
+
+	/**
+	 * @param user
+	 * @return the ordinals of the user preferences, in the iteration order of the user preferences
+	 */
+	int[] preferenceOrdinals(User user) {
+		List<Preference> preferenceList = user.getPreferenceList();
+		int[] preferences = new int[preferenceList.size()];
+		for(int i = 0; i < preferences.length; i++) {
+			preferences[i] = preferenceOrdinal(preferenceList.get(i));
+		}
+		return preferences;
+	}
+
+	/**
+	 * @param user
+	 * @param count the number of user preferences
+	 * @return the offsets of the user preferences, in the iteration order of the user preferences
+	 */
+	double[] preferenceOffsets(User user, int count) {
+		double[] preferenceOffsets = new double[count];
+		for(int i = 0; i < count; i++) {
+			preferenceOffsets[i] = user.getScore(i) - config.getMeanUserPreference();
+		}
+		return preferenceOffsets;
+	}
+
+	/**
+	 * @param user the user object
+	 * @param product the product object, that was in the products map of the matrix
+	 * @return the scaled product rating, as computed by {@link ProductRatingHypNorm}
+	 */
+	public double productRating(User user, Product product) {
+		return config.scale(rawProductRating(user, product));
+	}
+
+	/**
+	 * @param user the user object
+	 * @param product the product object, that was in the products map of the matrix
+	 * @return the recommendation of the product to the user
+	 */
+	public Recommendation recommend(User user, Product product) {
+		return new Recommendation(user.getUid(), product.getId(), productRating(user, product));
+	}
+
+	/**
+	 * Rates all the products of the matrix for a user, as one sparse matrix-vector product over the
+	 * rows of the user preferences.
+	 * @param user the user object
+	 * @return the recommendations for all products, in ascending order of product id
+	 */
+	public List<Recommendation> recommendAll(User user) {
+		double summedOffset = user.getTotalAbsoluteOffset(config);
+		double[] summedAverageAssociations = new double[productIds.length];
+		boolean[] information = new boolean[productIds.length];
+		boolean[] contradictions = new boolean[productIds.length];
+
+		for(Entry<Preference, Double> preferenceAndScore : user.getPreferences().entrySet()) {
+			int preferenceOrdinal = preferenceOrdinal(preferenceAndScore.getKey());
+			double preferenceOffset = preferenceAndScore.getValue() - config.getMeanUserPreference();
+			for(int cell = offsets[preferenceOrdinal]; cell < offsets[preferenceOrdinal + 1]; cell++) {
+				int productOrdinal = cellProducts[cell];
+				information[productOrdinal] = true;
+				contradictions[productOrdinal] |= isContradiction(preferenceOffset, cellMinAssociations[cell], cellMaxAssociations[cell]);
+				double averageAssociation = cellIndices[cell];
+				summedAverageAssociations[productOrdinal] += Double.isFinite(averageAssociation) ? averageAssociation*preferenceOffset : 0;
+			}
+		}
+
+		List<Recommendation> recommendations = new ArrayList<>(productIds.length);
+		for(int productOrdinal = 0; productOrdinal < productIds.length; productOrdinal++) {
+			double rawProductRating;
+			if(summedOffset == 0.0 || !information[productOrdinal]) {
+				rawProductRating = Double.NaN;
+			} else if(contradictions[productOrdinal]) {
+				rawProductRating = Double.NEGATIVE_INFINITY;
+			} else {
+				rawProductRating = summedAverageAssociations[productOrdinal]/summedOffset;
+			}
+			recommendations.add(new Recommendation(user.getUid(), productIds[productOrdinal], config.scale(rawProductRating)));
+		}
+		return recommendations;
+	}
+
+	/* Matrix access */
+
+	/**
+	 * @param preference
+	 * @param product
+	 * @return the sustainability index of the product for the preference, equation 20 of the Appendix.
+	 * 0 if none of the product tags is associated to the preference.
+	 */
+	public double getSustainabilityIndex(Preference preference, Product product) {
+		int preferenceOrdinal = preferenceOrdinal(preference);
+		int cell = Arrays.binarySearch(cellProducts, offsets[preferenceOrdinal], offsets[preferenceOrdinal + 1], productOrdinal(product.getId()));
+		return cell < 0 ? 0 : cellIndices[cell];
+	}
+
+	/**
+	 * @param preference
+	 * @return the ordinal of the preference row
+	 * @throws IllegalArgumentException if the preference is not indexed by the matrix
+	 */
+	int preferenceOrdinal(Preference preference) {
+		Integer ordinal = preferenceOrdinals.get(preference);
+		if(ordinal == null) {
+			throw new IllegalArgumentException("Preference is not indexed by the matrix: " + preference.getId());
+		}
+		return ordinal;
+	}
+
+	int productOrdinal(long productId) {
+		int ordinal = productOrdinals.get(productId);
+		if(ordinal == LongIntHashMap.MISSING) {
+			throw new IllegalArgumentException("Product is not indexed by the matrix: " + productId);
+		}
+		return ordinal;
+	}
+
+	public ScoringConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return the number of preference rows of the matrix
+	 */
+	int preferenceCount() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * @param preferenceOrdinal
+	 * @return the first cell of the preference row
+	 */
+	int rowStart(int preferenceOrdinal) {
+		return offsets[preferenceOrdinal];
+	}
+
+	/**
+	 * @param preferenceOrdinal
+	 * @return the cell after the last cell of the preference row
+	 */
+	int rowEnd(int preferenceOrdinal) {
+		return offsets[preferenceOrdinal + 1];
+	}
+
+	int cellProduct(int cell) {
+		return cellProducts[cell];
+	}
+
+	double cellIndex(int cell) {
+		return cellIndices[cell];
+	}
+
+	/**
+	 * @param preferenceOffset the user offset of the preference of the cell
+	 * @param cell
+	 * @return true if the extreme associations of the cell contradict the offset
+	 */
+	boolean isContradiction(double preferenceOffset, int cell) {
+		return isContradiction(preferenceOffset, cellMinAssociations[cell], cellMaxAssociations[cell]);
+	}
+
+	/**
+	 * @return the number of products in the matrix
+	 */
+	public int productCount() {
+		return productIds.length;
+	}
+
+	long productId(int productOrdinal) {
+		return productIds[productOrdinal];
+	}
+
+	/**
+	 * @param i between 0 and the number of products
+	 * @return the ordinal of the product with the i-th largest rating bound
+	 */
+	int productByBound(int i) {
+		return productsByBound[i];
+	}
+
+	/**
+	 * @param productOrdinal
+	 * @return an upper bound of the absolute non-scaled rating of the product, for any user
+	 */
+	double bound(int productOrdinal) {
+		return bounds[productOrdinal];
+	}
+
+	/**
+	 * @return the number of non-empty cells of the matrix
+	 */
+	public int size() {
+		return cellProducts.length;
+	}
+
+	/**
+	 * Growable columns of the matrix cells during construction.
+	 */
+	private static class Cells {
+		int size;
+		int[] products = new int[16];
+		double[] indices = new double[16];
+		double[] minAssociations = new double[16];
+		double[] maxAssociations = new double[16];
+
+		void add(int product, double index, double minAssociation, double maxAssociation) {
+			if(size == products.length) {
+				products = Arrays.copyOf(products, size << 1);
+				indices = Arrays.copyOf(indices, size << 1);
+				minAssociations = Arrays.copyOf(minAssociations, size << 1);
+				maxAssociations = Arrays.copyOf(maxAssociations, size << 1);
+			}
+			products[size] = product;
+			indices[size] = index;
+			minAssociations[size] = minAssociation;
+			maxAssociations[size] = maxAssociation;
+			size++;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package ch.ethz.coss.algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
+/**
+ * Returns the K best rated products of a {@link SustainabilityIndexMatrix} for a user, without rating and sorting the
+ * whole catalog. The candidates are kept in a bounded heap of size K. Since the non-scaled rating is a weighted average
+ * of sustainability indices, it is bounded by the largest absolute index of the product. Products are visited in
+ * descending bound order and the scan stops as soon as the K-th best rating is larger than any rating the remaining
+ * products can reach.
+ * <p>
+ * Products are ranked by descending rating and ascending product id on ties. Products without information and
+ * products with contradictions are placed according to a {@link Placement}.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class TopKRanking {
+
+	/**
+	 * Where products without information (NaN rating) or with contradictions end up in the ranking.
+	 */
+	public enum Placement {
+		/** the products are not returned */
+		EXCLUDE,
+		/** the products are ranked by their scaled rating, i.e. {@link Double#compare(double, double)}. NaN goes first, contradictions are rated with 0. */
+		BY_RATING,
+		/** the products are returned after all ranked products, in ascending product id */
+		LAST
+	}
+
+	/** best recommendation first */
+	static final Comparator<Recommendation> RANKING = (r1, r2) -> {
+		int compare = Double.compare(r2.getProductRating(), r1.getProductRating());
+		return compare != 0 ? compare : Long.compare(r1.getPid(), r2.getPid());
+	};
+
+	private static final Comparator<Recommendation> PRODUCT_ID = (r1, r2) -> Long.compare(r1.getPid(), r2.getPid());
+
+	final protected SustainabilityIndexMatrix matrix;
+	final protected Placement noInformation;
+	final protected Placement contradiction;
+
+	/**
+	 * Constructor, that excludes products without information and products with contradictions.
+	 * @param matrix the sustainability index matrix
+	 */
+	public TopKRanking(SustainabilityIndexMatrix matrix) {
+		this(matrix, Placement.EXCLUDE, Placement.EXCLUDE);
+	}
+
+	/**
+	 * Constructor
+	 * @param matrix the sustainability index matrix
+	 * @param noInformation the placement of products without information
+	 * @param contradiction the placement of products with contradictions
+	 */
+	public TopKRanking(SustainabilityIndexMatrix matrix, Placement noInformation, Placement contradiction) {
+		this.matrix = matrix;
+		this.noInformation = noInformation;
+		this.contradiction = contradiction;
+	}
+
+	/**
+	 * @param user the user object
+	 * @param k the maximum number of recommendations
+	 * @return at most k recommendations, best first
+	 */
+	public List<Recommendation> topK(User user, int k) {
+		if(k <= 0) {
+			return new ArrayList<>();
+		}
+		int[] preferences = matrix.preferenceOrdinals(user);
+		double[] preferenceOffsets = matrix.preferenceOffsets(user, preferences.length);
+		ScoringConfig config = matrix.getConfig();
+		double summedOffset = user.getTotalAbsoluteOffset(config);
+
+		//worst candidate on top, so that it is the one evicted
+		PriorityQueue<Recommendation> ranked = new PriorityQueue<>(k + 1, RANKING.reversed());
+		PriorityQueue<Recommendation> last = new PriorityQueue<>(k + 1, PRODUCT_ID.reversed());
+
+		//a NaN rated first has no bound, so all products have to be visited
+		boolean prune = noInformation != Placement.BY_RATING;
+		double contradictionRating = config.scale(Double.NEGATIVE_INFINITY);
+		for(int i = 0; i < matrix.productCount(); i++) {
+			int productOrdinal = matrix.productByBound(i);
+			if(prune && ranked.size() == k) {
+				double reachable = config.scale(matrix.bound(productOrdinal));
+				if(contradiction == Placement.BY_RATING) {
+					reachable = Math.max(reachable, contradictionRating);
+				}
+				if(ranked.peek().getProductRating() > reachable) {
+					break;
+				}
+			}
+
+			double rawProductRating = matrix.rawProductRating(preferences, preferenceOffsets, summedOffset, productOrdinal);
+			Placement placement = Placement.BY_RATING;
+			if(Double.isNaN(rawProductRating)) {
+				placement = noInformation;
+			} else if(rawProductRating == Double.NEGATIVE_INFINITY) {
+				placement = contradiction;
+			}
+
+			long productId = matrix.productId(productOrdinal);
+			double productRating = config.scale(rawProductRating);
+			switch(placement) {
+			case BY_RATING:
+				if(ranked.size() < k || isBetter(productRating, productId, ranked.peek())) {
+					offer(ranked, new Recommendation(user.getUid(), productId, productRating), k);
+				}
+				break;
+			case LAST:
+				if(last.size() < k || productId < last.peek().getPid()) {
+					offer(last, new Recommendation(user.getUid(), productId, productRating), k);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		List<Recommendation> recommendations = new ArrayList<>(ranked);
+		Collections.sort(recommendations, RANKING);
+		List<Recommendation> remaining = new ArrayList<>(last);
+		Collections.sort(remaining, PRODUCT_ID);
+		for(Recommendation recommendation : remaining) {
+			if(recommendations.size() == k) {
+				break;
+			}
+			recommendations.add(recommendation);
+		}
+		return recommendations;
+	}
+
+	private static boolean isBetter(double productRating, long productId, Recommendation worst) {
+		int compare = Double.compare(productRating, worst.getProductRating());
+		return compare > 0 || (compare == 0 && productId < worst.getPid());
+	}
+
+	private static void offer(PriorityQueue<Recommendation> heap, Recommendation recommendation, int k) {
+		heap.add(recommendation);
+		if(heap.size() > k) {
+			heap.poll();
+		}
+	}
+}
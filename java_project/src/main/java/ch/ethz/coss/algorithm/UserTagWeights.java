@@ -0,0 +1,211 @@
+package ch.ethz.coss.algorithm;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.PreferenceTag;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.ProductTagSet;
+import ch.ethz.coss.algorithm.ontology.ReferenceAssociation;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.LongIntHashMap;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
+/**
+ * The associations of all the preference tags of one user, grouped by product tag. The ontology is walked once, in
+ * the order of the {@link PreferenceScanner}, and every visited association is numbered. A product is then rated from
+ * the visits of its own tags only, summed in visit order, so the ratings are identical to the ones of
+ * {@link BatchProductRating} while the cost per product no longer depends on the size of the ontology.
+ * <p>
+ * The table is immutable once built and can be read by many threads, e.g. the chunks of {@link ParallelProductRating}.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+class UserTagWeights {
+
+	private final ScoringConfig config;
+	private final double summedOffset;
+
+	/* per preference of the user, in the iteration order of the preferences */
+	private final double[] preferenceOffsets;
+	private final int[] preferenceTagCounts;
+
+	/* per visited preference tag, in visit order */
+	private final int[] preferenceOfTag;
+	private final ReferenceAssociation[] references;
+
+	/* per visited association, in visit order */
+	private final int[] visitTags;
+	private final double[] visitValues;
+	private final boolean[] visitContradictions;
+
+	/* the visits of each product tag, in visit order */
+	private final LongIntHashMap productTagSlots;
+	private final int[] slotOffsets;
+	private final int[] slotVisits;
+
+	/**
+	 * Walks the ontology for the preferences of a user.
+	 * @param user the user object
+	 * @param tagAssociations the tag associations map
+	 * @param config the scoring configuration of the ratings
+	 */
+	UserTagWeights(User user, AssociationMap tagAssociations, ScoringConfig config) {
+		this.config = config;
+		this.summedOffset = user.getTotalAbsoluteOffset(config);
+		int preferenceCount = user.getPreferences().size();
+		this.preferenceOffsets = new double[preferenceCount];
+		this.preferenceTagCounts = new int[preferenceCount];
+
+		Visits visits = new Visits();
+		int preference = 0, tagCount = 0;
+		for(Entry<Preference, Double> preferenceAndScore : user.getPreferences().entrySet()) {
+			List<PreferenceTag> tags = preferenceAndScore.getKey().getTagList();
+			preferenceOffsets[preference] = preferenceAndScore.getValue() - config.getMeanUserPreference();
+			preferenceTagCounts[preference] = tags.size();
+			preference++;
+			tagCount += tags.size();
+		}
+		this.preferenceOfTag = new int[tagCount];
+		this.references = new ReferenceAssociation[tagCount];
+		int tag = 0;
+		preference = 0;
+		for(Entry<Preference, Double> preferenceAndScore : user.getPreferences().entrySet()) {
+			for(PreferenceTag preferenceTag : preferenceAndScore.getKey().getTagList()) {
+				preferenceOfTag[tag] = preference;
+				references[tag] = tagAssociations.getReferenceAssociation(preferenceTag.getId());
+				visits.tag = tag;
+				visits.preferenceOffset = preferenceOffsets[preference];
+				tagAssociations.forEach(preferenceTag.getId(), visits);
+				tag++;
+			}
+			preference++;
+		}
+		this.visitTags = Arrays.copyOf(visits.tags, visits.count);
+		this.visitValues = Arrays.copyOf(visits.values, visits.count);
+		this.visitContradictions = Arrays.copyOf(visits.contradictions, visits.count);
+
+		//group the visits by product tag, keeping the visit order within each tag
+		this.productTagSlots = new LongIntHashMap();
+		int[] slotOfVisit = new int[visits.count];
+		int slots = 0;
+		for(int visit = 0; visit < visits.count; visit++) {
+			int slot = productTagSlots.get(visits.productTags[visit]);
+			if(slot == LongIntHashMap.MISSING) {
+				slot = slots++;
+				productTagSlots.put(visits.productTags[visit], slot);
+			}
+			slotOfVisit[visit] = slot;
+		}
+		this.slotOffsets = new int[slots + 1];
+		for(int visit = 0; visit < visits.count; visit++) {
+			slotOffsets[slotOfVisit[visit] + 1]++;
+		}
+		for(int slot = 0; slot < slots; slot++) {
+			slotOffsets[slot + 1] += slotOffsets[slot];
+		}
+		this.slotVisits = new int[visits.count];
+		int[] next = Arrays.copyOf(slotOffsets, slots);
+		for(int visit = 0; visit < visits.count; visit++) {
+			slotVisits[next[slotOfVisit[visit]]++] = visit;
+		}
+	}
+
+	/**
+	 * Rates products from their own tags.
+	 * @param products the products to rate
+	 * @return the non-scaled ratings, in the order of the products. NaN if there is no information about a product,
+	 * negative infinity for contradictions.
+	 */
+	double[] rawProductRatings(List<Product> products) {
+		double[] rawProductRatings = new double[products.size()];
+		int[] buffer = new int[16];
+		for(int product = 0; product < products.size(); product++) {
+			ProductTagSet tags = products.get(product).getTagSet();
+			int count = 0;
+			for(int i = 0; i < tags.size(); i++) {
+				int slot = productTagSlots.get(tags.get(i));
+				if(slot == LongIntHashMap.MISSING) {
+					continue;
+				}
+				int visits = slotOffsets[slot + 1] - slotOffsets[slot];
+				if(count + visits > buffer.length) {
+					buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, count + visits));
+				}
+				System.arraycopy(slotVisits, slotOffsets[slot], buffer, count, visits);
+				count += visits;
+			}
+			Arrays.sort(buffer, 0, count);
+			rawProductRatings[product] = rawProductRating(buffer, count);
+		}
+		return rawProductRatings;
+	}
+
+	/**
+	 * Sums the visits of a product as {@link BatchProductRating}, per preference tag, then per preference.
+	 * @param visits the visits of the product tags, in visit order
+	 * @param count the number of visits
+	 */
+	private double rawProductRating(int[] visits, int count) {
+		if(summedOffset == 0.0 || count == 0) {
+			return Double.NaN;
+		}
+		double summedAverageAssociation = 0.0;
+		boolean contradiction = false;
+		int i = 0;
+		while(i < count) {
+			int preference = preferenceOfTag[visitTags[visits[i]]];
+			double summedNormalizedAssociation = 0.0;
+			while(i < count && preferenceOfTag[visitTags[visits[i]]] == preference) {
+				int tag = visitTags[visits[i]];
+				double summedAssociation = 0.0;
+				while(i < count && visitTags[visits[i]] == tag) {
+					summedAssociation += visitValues[visits[i]];
+					contradiction |= visitContradictions[visits[i]];
+					i++;
+				}
+				summedNormalizedAssociation += SustainabilityIndexMatrix.normalizedAssociation(summedAssociation, references[tag], config);
+			}
+			double averageAssociation = summedNormalizedAssociation/preferenceTagCounts[preference];
+			//This is done because preferences without preference tags or contraditions are assigned non finite values.
+			summedAverageAssociation += Double.isFinite(averageAssociation) ? averageAssociation*preferenceOffsets[preference] : 0;
+		}
+		return contradiction ? Double.NEGATIVE_INFINITY : summedAverageAssociation/summedOffset;
+	}
+
+	/**
+	 * Collects the visited associations of the current preference tag.
+	 */
+	private final class Visits implements AssociationMap.AssociationConsumer {
+		private int tag;
+		private double preferenceOffset;
+		private int count;
+		private long[] productTags = new long[16];
+		private int[] tags = new int[16];
+		private double[] values = new double[16];
+		private boolean[] contradictions = new boolean[16];
+
+		@Override
+		public void accept(long preferenceTagId, long productTagId, double associationValue) {
+			if(count == tags.length) {
+				int capacity = count << 1;
+				productTags = Arrays.copyOf(productTags, capacity);
+				tags = Arrays.copyOf(tags, capacity);
+				values = Arrays.copyOf(values, capacity);
+				contradictions = Arrays.copyOf(contradictions, capacity);
+			}
+			productTags[count] = productTagId;
+			tags[count] = tag;
+			values[count] = associationValue;
+			//contradiction activates only in the case offset and association are on extreme values and have opposite signs.
+			contradictions[count] = config.isContradiction(preferenceOffset, associationValue);
+			count++;
+		}
+	}
+}
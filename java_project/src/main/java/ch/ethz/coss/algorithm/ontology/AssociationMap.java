@@ -1,14 +1,17 @@
 package ch.ethz.coss.algorithm.ontology;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import ch.ethz.coss.algorithm.utilities.Pair;
 /**
@@ -22,13 +25,78 @@ import ch.ethz.coss.algorithm.utilities.Pair;
 public class AssociationMap implements Serializable{
 
 	private static final long serialVersionUID = 1L;
-	private ConcurrentMap<Pair<Long, Long>, Association> matches;
+	
+	/**
+	 * The available storage backends of an association map.
+	 */
+	public enum Storage {
+		/**
+		 * Associations are stored as objects in concurrent hash maps. Thread safe for concurrent reads and writes.
+		 */
+		CONCURRENT,
+		/**
+		 * Associations are stored in primitive arrays with packed long keys. Uses a fraction of the memory,
+		 * but tag ids must fit in 32 unsigned bits and the map must be populated before it is read concurrently.
+		 */
+		PACKED
+	}
+	
+	/**
+	 * Receives the tag ids and the value of an association, so that associations can be read from the packed and
+	 * compiled storage without creating an {@link Association} per entry.
+	 */
+	@FunctionalInterface
+	public interface AssociationConsumer {
+		void accept(long preferenceTagId, long productTagId, double associationValue);
+	}
+
+	private final AssociationStore store;
+	/**
+	 * Reference associations per preference tag id, computed on first use and invalidated whenever an association
+	 * of the preference tag is added.
+	 */
+	private final transient ConcurrentMap<Long, ReferenceAssociation> referenceAssociations = new ConcurrentHashMap<>();
+	/**
+	 * A new stamp of the {@link VersionSequence} on every addition, used to discard reference associations computed
+	 * concurrently with an addition.
+	 */
+	private final transient AtomicLong version = new AtomicLong(VersionSequence.next());
+	/* the storage read by readObject, the map itself is replaced in readResolve */
+	private transient AssociationStore deserializedStore;
 
 	/**
 	 * Default constructor for an association map. Expected to be thread safe.
 	 */
 	public AssociationMap() {
-		this.matches = new ConcurrentHashMap<>();
+		this(Storage.CONCURRENT);
+	}
+	
+	/**
+	 * Constructor for an association map with the given storage backend.
+	 * @param storage the storage backend
+	 */
+	public AssociationMap(Storage storage) {
+		this.store = storage == Storage.PACKED ? new PackedAssociationStore() : new ConcurrentAssociationStore();
+	}
+	
+	/**
+	 * Constructor for an association map on top of an existing storage, e.g. a compiled snapshot.
+	 * @param store the storage backend
+	 */
+	AssociationMap(AssociationStore store) {
+		this.store = store;
+	}
+	
+	/**
+	 * Freezes the current associations into an immutable snapshot in compressed sparse row layout.
+	 * Later additions to this map are not reflected in the snapshot.
+	 * @return the compiled associations
+	 */
+	public CompiledAssociations compile() {
+		if(store instanceof CompiledAssociations) {
+			return (CompiledAssociations) store;
+		}
+		return new CompiledAssociations(store.values());
 	}
 	
 	/**
@@ -38,25 +106,48 @@ public class AssociationMap implements Serializable{
 	 * @param score
 	 */
 	public void addMapping(Tag preferenceTag, Tag productTag, double score) {
-		matches.put(new Pair<>(preferenceTag.getId(), productTag.getId()), new Association(productTag.getId(), preferenceTag.getId(), score));
+		addPair(new Association(productTag.getId(), preferenceTag.getId(), score));
 	}
 
 	/**
 	 * Directly add a tag pair with an association score.
 	 * @param tagPair
+	 * @throws UnsupportedOperationException if the map is a view of {@link CompiledAssociations}
 	 */
 	public void addPair(Association tagPair) {
-		matches.put(new Pair<>(tagPair.getPreferenceTagId(), tagPair.getProductTagId()), tagPair);
+		store.put(tagPair);
+		version.set(VersionSequence.next());
+		referenceAssociations.remove(tagPair.getPreferenceTagId());
 	}
 	
 	/**
-	 * Returns the specified mapping.
+	 * Returns the specified mapping. For the packed and compiled storage the association is created on each call
+	 * from the stored value, use {@link #getValue(long, long)} to read the value only.
 	 * @param preferenceTagId
 	 * @param productTagId
 	 * @return
 	 */
 	public Association getMapping(long preferenceTagId, long productTagId) {
-		return matches.get(new Pair<>(preferenceTagId, productTagId));
+		return store.get(preferenceTagId, productTagId);
+	}
+
+	/**
+	 * @param preferenceTagId
+	 * @param productTagId
+	 * @return the association value of the tag pair, or NaN if the tags are not associated
+	 */
+	public double getValue(long preferenceTagId, long productTagId) {
+		return store.getValue(preferenceTagId, productTagId);
+	}
+
+	/**
+	 * Passes every association of the preference tag to the consumer, in the order of {@link #find(long)}, without
+	 * creating association objects.
+	 * @param preferenceTagId the preference tag id
+	 * @param consumer receives the associations
+	 */
+	public void forEach(long preferenceTagId, AssociationConsumer consumer) {
+		store.forEachOfPreferenceTag(preferenceTagId, consumer);
 	}
 	
 	/**
@@ -66,7 +157,7 @@ public class AssociationMap implements Serializable{
 	 * @return
 	 */
 	public boolean contains(long preferenceTagId, long productTagId) {
-		return matches.containsKey(new Pair<>(preferenceTagId, productTagId));
+		return store.get(preferenceTagId, productTagId) != null;
 	}
 
 	/**
@@ -76,15 +167,7 @@ public class AssociationMap implements Serializable{
 	 * @return a list with all matching associations
 	 */
 	public List<Association> find(long preferenceTagId) {
-		Set<Entry<Pair<Long, Long>, Association>> entryset = matches.entrySet();
-		List<Association> matchingTags = new ArrayList<>();
-		for (Entry<Pair<Long, Long>, Association> entry : entryset) {
-			Association tagMapping = entry.getValue();
-			if (tagMapping.getPreferenceTagId() == preferenceTagId) {
-				matchingTags.add(tagMapping);
-			}
-		}
-		return matchingTags;
+		return store.findByPreferenceTag(preferenceTagId);
 	}
 
 	/**
@@ -95,15 +178,39 @@ public class AssociationMap implements Serializable{
 	 * @return a list with all matching associations
 	 */
 	public List<Association> find(Preference preference) {
-		Set<Entry<Pair<Long, Long>, Association>> entryset = matches.entrySet();
 		List<Association> matchingTags = new ArrayList<>();
-		for (Entry<Pair<Long, Long>, Association> entry : entryset) {
-			Association tagMapping = entry.getValue();
-			Set<Long> preferenceTagIds = preference.getTagIds();
-			for (Long preferenceTagId : preferenceTagIds) {
-				if (tagMapping.getPreferenceTagId() == preferenceTagId) {
-					matchingTags.add(tagMapping);
+		for (Long preferenceTagId : preference.getTagIds()) {
+			matchingTags.addAll(store.findByPreferenceTag(preferenceTagId));
+		}
+		return matchingTags;
+	}
+
+	/**
+	 * Finds a list that contains all the tag pairs related to the specific product tag.
+	 * @param productTagId the product tag id for the search
+	 * @return a list with all matching associations
+	 */
+	public List<Association> findByProductTag(long productTagId) {
+		return store.findByProductTag(productTagId);
+	}
+
+	/**
+	 * Finds all the associations that touch any tag of the given product, grouped by preference tag id.
+	 * The cost is proportional to the number of product tags and matching associations, so it is
+	 * suitable for catalog side queries, e.g. which preferences a product affects.
+	 * @param product the product object
+	 * @return a map of preference tag ids to the matching associations of the product
+	 */
+	public Map<Long, List<Association>> findAll(Product product) {
+		Map<Long, List<Association>> matchingTags = new HashMap<>();
+		for (Long productTagId : product.getTagIds()) {
+			for (Association association : store.findByProductTag(productTagId)) {
+				List<Association> preferenceTagMatches = matchingTags.get(association.getPreferenceTagId());
+				if(preferenceTagMatches == null) {
+					preferenceTagMatches = new ArrayList<>();
+					matchingTags.put(association.getPreferenceTagId(), preferenceTagMatches);
 				}
+				preferenceTagMatches.add(association);
 			}
 		}
 		return matchingTags;
@@ -118,15 +225,14 @@ public class AssociationMap implements Serializable{
 	public List<Association> findAll(Preference preference, Product product) {		
 		List<Association> matchingTags = new ArrayList<>();
 		Set<Long> preferenceTagIds = preference.getTagIds();
-		Set<Long> productTagIds = product.getTagIds();
 
+		for (Long productTagId : product.getTagIds()) {
 			for (Long preferenceTagId : preferenceTagIds) {
-				for (Long productTagId : productTagIds) {
-					Association match = getMapping(preferenceTagId, productTagId);
-					if(contains(preferenceTagId, productTagId)){
-						matchingTags.add(match);
-					}
-				}		
+				Association match = store.get(preferenceTagId, productTagId);
+				if(match != null){
+					matchingTags.add(match);
+				}
+			}
 		}
 		return matchingTags;
 	}
@@ -139,13 +245,13 @@ public class AssociationMap implements Serializable{
 	 */
 	public List<Association> matchAll(long preferenceTagId, Product product) {		
 		List<Association> matchingTags = new ArrayList<>();
-		Set<Long> productTagIds = product.getTagIds();
-
-				for (Long productTagId : productTagIds) {
-					Association match = getMapping(preferenceTagId, productTagId);
-					if(contains(preferenceTagId, productTagId)){
-						matchingTags.add(match);
-					}	
+		ProductTagSet productTagIds = product.getTagSet();
+		for (int i = 0; i < productTagIds.size(); i++) {
+			long productTagId = productTagIds.get(i);
+			double associationValue = store.getValue(preferenceTagId, productTagId);
+			if(!Double.isNaN(associationValue)){
+				matchingTags.add(new Association(productTagId, preferenceTagId, associationValue));
+			}	
 		}
 		return matchingTags;
 	}
@@ -158,21 +264,110 @@ public class AssociationMap implements Serializable{
 	 */
 	public List<Association> findAll(Preference preference, ProductTag productTag) {		
 		List<Association> matchingTags = new ArrayList<>();
-		Set<Long> preferenceTagIds = preference.getTagIds();
-		Set<Long> productTagIds = Collections.singleton(productTag.getId());
-
-			for (Long preferenceTagId : preferenceTagIds) {
-				for (Long productTagId : productTagIds) {
-					Association match = getMapping(preferenceTagId, productTagId);
-					if(contains(preferenceTagId, productTagId)){
-						matchingTags.add(match);
-					}
-				}		
+		for (Long preferenceTagId : preference.getTagIds()) {
+			Association match = store.get(preferenceTagId, productTag.getId());
+			if(match != null){
+				matchingTags.add(match);
+			}
 		}
 		return matchingTags;
 	}
 
 	
+	/**
+	 * The reference association of a preference tag, i.e. the sums of its positive and negative association values
+	 * as used in equations 17-19 of the Appendix. The value is cached until an association of the tag is added.
+	 * @param preferenceTagId the preference tag id
+	 * @return the reference association, with zero sums if the tag has no associations
+	 */
+	public ReferenceAssociation getReferenceAssociation(long preferenceTagId) {
+		ReferenceAssociation reference = referenceAssociations.get(preferenceTagId);
+		if(reference == null) {
+			long computedAt = version.get();
+			reference = ReferenceAssociation.of(store, preferenceTagId);
+			if(version.get() == computedAt) {
+				referenceAssociations.putIfAbsent(preferenceTagId, reference);
+				//an addition may have invalidated the tag between the check and the caching
+				if(version.get() != computedAt) {
+					referenceAssociations.remove(preferenceTagId, reference);
+				}
+			}
+		}
+		return reference;
+	}
+
+	/**
+	 * Whether any tag of the product has an association, i.e. whether the product can receive a rating other than NaN.
+	 * The result is cached on the product and recomputed only after its tags change, or after associations were added
+	 * to a map that did not reach it. Associations are never removed, so a reachable product stays reachable.
+	 * @param product the product object
+	 * @return true if at least one product tag has an association
+	 */
+	public boolean hasTagInformation(Product product) {
+		long mapVersion = version.get();
+		long tagVersion = product.getTagVersion();
+		Reachability cached = product.reachability;
+		if(cached != null && cached.map == this && cached.tagVersion == tagVersion && (cached.reachable || cached.mapVersion == mapVersion)) {
+			return cached.reachable;
+		}
+		boolean reachable = false;
+		ProductTagSet tags = product.getTagSet();
+		for(int i = 0; i < tags.size() && !reachable; i++) {
+			reachable = store.containsProductTag(tags.get(i));
+		}
+		product.reachability = new Reachability(this, mapVersion, tagVersion, reachable);
+		return reachable;
+	}
+
+	/**
+	 * @param productTagId
+	 * @return true if the product tag has at least one association
+	 */
+	public boolean isReachable(long productTagId) {
+		return store.containsProductTag(productTagId);
+	}
+
+	/**
+	 * The reachability of a product for the versions of a map and of the product tags.
+	 */
+	static final class Reachability {
+		final AssociationMap map;
+		final long mapVersion;
+		final long tagVersion;
+		final boolean reachable;
+
+		Reachability(AssociationMap map, long mapVersion, long tagVersion, boolean reachable) {
+			this.map = map;
+			this.mapVersion = mapVersion;
+			this.tagVersion = tagVersion;
+			this.reachable = reachable;
+		}
+	}
+
+	/**
+	 * Reads the storage of the map. Maps written before the storage backends hold their associations in a
+	 * concurrent map named matches, keyed by preference and product tag ids, and are read into the concurrent storage.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		if(fields.getObjectStreamClass().getField("matches") != null) {
+			AssociationStore migrated = new ConcurrentAssociationStore();
+			for(Object association : ((Map<?, ?>) fields.get("matches", null)).values()) {
+				migrated.put((Association) association);
+			}
+			deserializedStore = migrated;
+		} else {
+			deserializedStore = (AssociationStore) fields.get("store", null);
+		}
+	}
+
+	/**
+	 * The caches and the version are not serialized, a deserialized map starts with new ones.
+	 */
+	private Object readResolve() {
+		return new AssociationMap(deserializedStore);
+	}
+
 	/*Getters and Setters*/
 	/**
 	 * Gets the association score between a product tag and a preference tag
@@ -185,11 +380,34 @@ public class AssociationMap implements Serializable{
 	}
 	
 	/**
-	 * Get all the tag-mappings (associations) in that map
+	 * Get all the tag-mappings (associations) in that map. For the concurrent storage the returned map is a view
+	 * of the internal storage, for the packed storage it is a read only copy. Associations should only be added via
+	 * {@link #addPair(Association)} or {@link #addMapping(Tag, Tag, double)} so that the indices are kept up to date.
 	 * @return
 	 */
 	public Map<Pair<Long, Long>, Association> getAssociations() {
-		return matches;
+		return store.asMap();
+	}
+
+	/**
+	 * @return all the associations, without building the pair keys of {@link #getAssociations()}
+	 */
+	Collection<Association> values() {
+		return store.values();
+	}
+	
+	/**
+	 * @return a stamp that changes whenever an association is added to the map
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * @return the number of associations in the map
+	 */
+	public int size() {
+		return store.size();
 	}
 
 	
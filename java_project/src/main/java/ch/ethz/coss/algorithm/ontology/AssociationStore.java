@@ -0,0 +1,78 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import ch.ethz.coss.algorithm.utilities.Pair;
+
+/**
+ * The storage backend of an {@link AssociationMap}. Implementations keep the associations indexed both per
+ * preference tag and per product tag, so that lookups from either side cost time proportional to their result.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+interface AssociationStore extends Serializable {
+
+	/**
+	 * Adds an association, replacing any previous association of the same tag pair.
+	 * @param association
+	 */
+	void put(Association association);
+
+	/**
+	 * @param preferenceTagId
+	 * @param productTagId
+	 * @return the association of the tag pair, or null if there is none
+	 */
+	Association get(long preferenceTagId, long productTagId);
+
+	/**
+	 * @param preferenceTagId
+	 * @param productTagId
+	 * @return the association value of the tag pair, or NaN if there is none
+	 */
+	double getValue(long preferenceTagId, long productTagId);
+
+	/**
+	 * Passes every association of the preference tag to the consumer, in the order of {@link #findByPreferenceTag(long)},
+	 * without creating association objects.
+	 * @param preferenceTagId
+	 * @param consumer
+	 */
+	void forEachOfPreferenceTag(long preferenceTagId, AssociationMap.AssociationConsumer consumer);
+
+	/**
+	 * @param preferenceTagId
+	 * @return a new list with all the associations of the preference tag
+	 */
+	List<Association> findByPreferenceTag(long preferenceTagId);
+
+	/**
+	 * @param productTagId
+	 * @return a new list with all the associations of the product tag
+	 */
+	List<Association> findByProductTag(long productTagId);
+
+	/**
+	 * @param productTagId
+	 * @return true if the product tag has at least one association
+	 */
+	boolean containsProductTag(long productTagId);
+
+	/**
+	 * @return all the associations, in no particular order
+	 */
+	Collection<Association> values();
+
+	/**
+	 * @return all the associations keyed by (preference tag id, product tag id)
+	 */
+	Map<Pair<Long, Long>, Association> asMap();
+
+	int size();
+}
@@ -0,0 +1,439 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.ethz.coss.algorithm.utilities.LongIntHashMap;
+import ch.ethz.coss.algorithm.utilities.Pair;
+
+/**
+ * An immutable snapshot of an {@link AssociationMap} in compressed sparse row layout. Preference tags and product tags
+ * are mapped to dense ordinals, in ascending order of their ids. The associations of the preference tag with ordinal
+ * {@code r} are the entries {@code rowStart(r)} to {@code rowEnd(r)} of the parallel product tag ordinal and value
+ * arrays, sorted by product tag ordinal. A transposed index gives the entries of each product tag.
+ * The snapshot is read only and safe to share between threads. Create it with {@link AssociationMap#compile()}.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public final class CompiledAssociations implements AssociationStore {
+
+	private static final long serialVersionUID = 1L;
+
+	/* ordinal mappings */
+	private final long[] preferenceTagIds;
+	private final long[] productTagIds;
+	private final LongIntHashMap preferenceTagOrdinals;
+	private final LongIntHashMap productTagOrdinals;
+
+	/* rows per preference tag ordinal */
+	private final int[] offsets;
+	private final int[] entryProductTags;
+	private final double[] entryValues;
+	/* reference association sums per preference tag ordinal */
+	private final double[] positiveSums;
+	private final double[] negativeSums;
+
+	/* transposed index, entries per product tag ordinal */
+	private final int[] columnOffsets;
+	private final int[] columnEntries;
+	private final int[] columnPreferenceTags;
+
+	private transient AssociationMap view;
+
+	/**
+	 * Compiles the given associations.
+	 * @param associations all associations of the map, with unique tag pairs
+	 */
+	CompiledAssociations(Collection<Association> associations) {
+		//one copy, the collection may be a live view of a concurrent store
+		Association[] copy = associations.toArray(new Association[0]);
+		int size = copy.length;
+		int[] preferenceTags = new int[size];
+		int[] productTags = new int[size];
+		double[] values = new double[size];
+
+		long[] preferenceTagIdsOfAssociations = new long[size];
+		long[] productTagIdsOfAssociations = new long[size];
+		int i;
+		for(i = 0; i < size; i++) {
+			preferenceTagIdsOfAssociations[i] = copy[i].getPreferenceTagId();
+			productTagIdsOfAssociations[i] = copy[i].getProductTagId();
+			values[i] = copy[i].getAssociationValue();
+		}
+		this.preferenceTagIds = distinctSorted(preferenceTagIdsOfAssociations);
+		this.productTagIds = distinctSorted(productTagIdsOfAssociations);
+		this.preferenceTagOrdinals = ordinals(preferenceTagIds);
+		this.productTagOrdinals = ordinals(productTagIds);
+		for(i = 0; i < size; i++) {
+			preferenceTags[i] = preferenceTagOrdinals.get(preferenceTagIdsOfAssociations[i]);
+			productTags[i] = productTagOrdinals.get(productTagIdsOfAssociations[i]);
+		}
+
+		//counting sort by product tag first, so that placing the associations column by column keeps rows sorted
+		this.columnOffsets = prefixSums(productTags, productTagIds.length);
+		int[] byColumn = new int[size];
+		int[] cursor = Arrays.copyOf(columnOffsets, productTagIds.length);
+		for(i = 0; i < size; i++) {
+			byColumn[cursor[productTags[i]]++] = i;
+		}
+
+		this.offsets = prefixSums(preferenceTags, preferenceTagIds.length);
+		this.entryProductTags = new int[size];
+		this.entryValues = new double[size];
+		this.columnEntries = new int[size];
+		this.columnPreferenceTags = new int[size];
+		cursor = Arrays.copyOf(offsets, preferenceTagIds.length);
+		for(int k = 0; k < size; k++) {
+			int association = byColumn[k];
+			int entry = cursor[preferenceTags[association]]++;
+			entryProductTags[entry] = productTags[association];
+			entryValues[entry] = values[association];
+			columnEntries[k] = entry;
+			columnPreferenceTags[k] = preferenceTags[association];
+		}
+
+		this.positiveSums = new double[preferenceTagIds.length];
+		this.negativeSums = new double[preferenceTagIds.length];
+		for(int preferenceTag = 0; preferenceTag < preferenceTagIds.length; preferenceTag++) {
+			for(int entry = offsets[preferenceTag]; entry < offsets[preferenceTag + 1]; entry++) {
+				if(entryValues[entry] > 0) {
+					positiveSums[preferenceTag] += entryValues[entry];
+				} else {
+					negativeSums[preferenceTag] += entryValues[entry];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Restores compiled associations from their columns, e.g. as read from an {@link OntologySnapshot}. The columns
+	 * are used as they are, without copying or validating them.
+	 */
+	CompiledAssociations(long[] preferenceTagIds, long[] productTagIds, int[] offsets, int[] entryProductTags, double[] entryValues,
+			double[] positiveSums, double[] negativeSums, int[] columnOffsets, int[] columnEntries, int[] columnPreferenceTags) {
+		this.preferenceTagIds = preferenceTagIds;
+		this.productTagIds = productTagIds;
+		this.preferenceTagOrdinals = ordinals(preferenceTagIds);
+		this.productTagOrdinals = ordinals(productTagIds);
+		this.offsets = offsets;
+		this.entryProductTags = entryProductTags;
+		this.entryValues = entryValues;
+		this.positiveSums = positiveSums;
+		this.negativeSums = negativeSums;
+		this.columnOffsets = columnOffsets;
+		this.columnEntries = columnEntries;
+		this.columnPreferenceTags = columnPreferenceTags;
+	}
+
+	/**
+	 * Writes the columns in the order of the restoring constructor, each array as its length followed by its
+	 * big endian elements.
+	 * @param out the stream, e.g. of an {@link OntologySnapshot}
+	 * @throws IOException
+	 */
+	void writeColumns(DataOutputStream out) throws IOException {
+		writeLongs(out, preferenceTagIds);
+		writeLongs(out, productTagIds);
+		writeInts(out, offsets);
+		writeInts(out, entryProductTags);
+		writeDoubles(out, entryValues);
+		writeDoubles(out, positiveSums);
+		writeDoubles(out, negativeSums);
+		writeInts(out, columnOffsets);
+		writeInts(out, columnEntries);
+		writeInts(out, columnPreferenceTags);
+	}
+
+	private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+		out.writeInt(values.length);
+		for(long value : values) {
+			out.writeLong(value);
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		out.writeInt(values.length);
+		for(int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+		out.writeInt(values.length);
+		for(double value : values) {
+			out.writeDouble(value);
+		}
+	}
+
+	private static long[] distinctSorted(long[] ids) {
+		long[] sorted = ids.clone();
+		Arrays.sort(sorted);
+		int distinct = 0;
+		for(int i = 0; i < sorted.length; i++) {
+			if(i == 0 || sorted[i] != sorted[i - 1]) {
+				sorted[distinct++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, distinct);
+	}
+
+	private static LongIntHashMap ordinals(long[] ids) {
+		LongIntHashMap ordinals = new LongIntHashMap(ids.length);
+		for(int ordinal = 0; ordinal < ids.length; ordinal++) {
+			ordinals.put(ids[ordinal], ordinal);
+		}
+		return ordinals;
+	}
+
+	/**
+	 * @return the start offsets of each ordinal, with one extra trailing element equal to the number of entries
+	 */
+	private static int[] prefixSums(int[] ordinalsOfEntries, int ordinals) {
+		int[] offsets = new int[ordinals + 1];
+		for(int ordinal : ordinalsOfEntries) {
+			offsets[ordinal + 1]++;
+		}
+		for(int ordinal = 0; ordinal < ordinals; ordinal++) {
+			offsets[ordinal + 1] += offsets[ordinal];
+		}
+		return offsets;
+	}
+
+	/* Ordinals */
+
+	/**
+	 * @param preferenceTagId
+	 * @return the ordinal of the preference tag, or -1 if it has no associations
+	 */
+	public int preferenceTagOrdinal(long preferenceTagId) {
+		return preferenceTagOrdinals.get(preferenceTagId);
+	}
+
+	/**
+	 * @param productTagId
+	 * @return the ordinal of the product tag, or -1 if it has no associations
+	 */
+	public int productTagOrdinal(long productTagId) {
+		return productTagOrdinals.get(productTagId);
+	}
+
+	public long preferenceTagId(int preferenceTagOrdinal) {
+		return preferenceTagIds[preferenceTagOrdinal];
+	}
+
+	public long productTagId(int productTagOrdinal) {
+		return productTagIds[productTagOrdinal];
+	}
+
+	public int preferenceTagCount() {
+		return preferenceTagIds.length;
+	}
+
+	public int productTagCount() {
+		return productTagIds.length;
+	}
+
+	/* Rows and entries */
+
+	/**
+	 * @param preferenceTagOrdinal
+	 * @return the first entry of the preference tag
+	 */
+	public int rowStart(int preferenceTagOrdinal) {
+		return offsets[preferenceTagOrdinal];
+	}
+
+	/**
+	 * @param preferenceTagOrdinal
+	 * @return the entry after the last entry of the preference tag
+	 */
+	public int rowEnd(int preferenceTagOrdinal) {
+		return offsets[preferenceTagOrdinal + 1];
+	}
+
+	public int productTagOrdinalAt(int entry) {
+		return entryProductTags[entry];
+	}
+
+	public double valueAt(int entry) {
+		return entryValues[entry];
+	}
+
+	/**
+	 * @param preferenceTagOrdinal
+	 * @return the sum of the positive association values of the preference tag, before clipping
+	 * @see ReferenceAssociation
+	 */
+	public double positiveSum(int preferenceTagOrdinal) {
+		return positiveSums[preferenceTagOrdinal];
+	}
+
+	/**
+	 * @param preferenceTagOrdinal
+	 * @return the sum of the zero or negative association values of the preference tag, before clipping
+	 * @see ReferenceAssociation
+	 */
+	public double negativeSum(int preferenceTagOrdinal) {
+		return negativeSums[preferenceTagOrdinal];
+	}
+
+	/**
+	 * Binary search of a product tag in the row of a preference tag.
+	 * @param preferenceTagOrdinal
+	 * @param productTagOrdinal
+	 * @return the entry of the tag pair, or -1 if the tags are not associated
+	 */
+	public int entryOf(int preferenceTagOrdinal, int productTagOrdinal) {
+		if(preferenceTagOrdinal < 0 || productTagOrdinal < 0) {
+			return -1;
+		}
+		int entry = Arrays.binarySearch(entryProductTags, offsets[preferenceTagOrdinal], offsets[preferenceTagOrdinal + 1], productTagOrdinal);
+		return entry < 0 ? -1 : entry;
+	}
+
+	/**
+	 * @param productTagOrdinal
+	 * @return the first position of the product tag in the transposed index
+	 */
+	public int columnStart(int productTagOrdinal) {
+		return columnOffsets[productTagOrdinal];
+	}
+
+	/**
+	 * @param productTagOrdinal
+	 * @return the position after the last position of the product tag in the transposed index
+	 */
+	public int columnEnd(int productTagOrdinal) {
+		return columnOffsets[productTagOrdinal + 1];
+	}
+
+	/**
+	 * @param position a position of the transposed index
+	 * @return the entry at that position
+	 */
+	public int columnEntryAt(int position) {
+		return columnEntries[position];
+	}
+
+	/**
+	 * @param position a position of the transposed index
+	 * @return the preference tag ordinal of the entry at that position
+	 */
+	public int columnPreferenceTagAt(int position) {
+		return columnPreferenceTags[position];
+	}
+
+	/* Association lookups */
+
+	/**
+	 * @return a read only association map backed by this snapshot, that can be used wherever an
+	 * {@link AssociationMap} is expected.
+	 */
+	public AssociationMap asAssociationMap() {
+		if(view == null) {
+			view = new AssociationMap(this);
+		}
+		return view;
+	}
+
+	/**
+	 * Not supported, the snapshot is read only.
+	 */
+	@Override
+	public void put(Association association) {
+		throw new UnsupportedOperationException("Compiled associations are read only, add associations to the AssociationMap and compile it again.");
+	}
+
+	@Override
+	public Association get(long preferenceTagId, long productTagId) {
+		int entry = entryOf(preferenceTagOrdinal(preferenceTagId), productTagOrdinal(productTagId));
+		return entry < 0 ? null : new Association(productTagId, preferenceTagId, entryValues[entry]);
+	}
+
+	@Override
+	public double getValue(long preferenceTagId, long productTagId) {
+		int entry = entryOf(preferenceTagOrdinal(preferenceTagId), productTagOrdinal(productTagId));
+		return entry < 0 ? Double.NaN : entryValues[entry];
+	}
+
+	@Override
+	public void forEachOfPreferenceTag(long preferenceTagId, AssociationMap.AssociationConsumer consumer) {
+		int preferenceTag = preferenceTagOrdinal(preferenceTagId);
+		if(preferenceTag < 0) {
+			return;
+		}
+		for(int entry = rowStart(preferenceTag); entry < rowEnd(preferenceTag); entry++) {
+			consumer.accept(preferenceTagId, productTagIds[entryProductTags[entry]], entryValues[entry]);
+		}
+	}
+
+	@Override
+	public List<Association> findByPreferenceTag(long preferenceTagId) {
+		int preferenceTag = preferenceTagOrdinal(preferenceTagId);
+		if(preferenceTag < 0) {
+			return new ArrayList<>();
+		}
+		List<Association> associations = new ArrayList<>(rowEnd(preferenceTag) - rowStart(preferenceTag));
+		for(int entry = rowStart(preferenceTag); entry < rowEnd(preferenceTag); entry++) {
+			associations.add(new Association(productTagIds[entryProductTags[entry]], preferenceTagId, entryValues[entry]));
+		}
+		return associations;
+	}
+
+	@Override
+	public boolean containsProductTag(long productTagId) {
+		return productTagOrdinal(productTagId) >= 0;
+	}
+
+	@Override
+	public List<Association> findByProductTag(long productTagId) {
+		int productTag = productTagOrdinal(productTagId);
+		if(productTag < 0) {
+			return new ArrayList<>();
+		}
+		List<Association> associations = new ArrayList<>(columnEnd(productTag) - columnStart(productTag));
+		for(int position = columnStart(productTag); position < columnEnd(productTag); position++) {
+			int entry = columnEntries[position];
+			associations.add(new Association(productTagId, preferenceTagIds[columnPreferenceTags[position]], entryValues[entry]));
+		}
+		return associations;
+	}
+
+	@Override
+	public Collection<Association> values() {
+		List<Association> associations = new ArrayList<>(size());
+		for(int preferenceTag = 0; preferenceTag < preferenceTagIds.length; preferenceTag++) {
+			for(int entry = rowStart(preferenceTag); entry < rowEnd(preferenceTag); entry++) {
+				associations.add(new Association(productTagIds[entryProductTags[entry]], preferenceTagIds[preferenceTag], entryValues[entry]));
+			}
+		}
+		return associations;
+	}
+
+	/**
+	 * Materializes all associations. The result is a read only copy, not a view.
+	 */
+	@Override
+	public Map<Pair<Long, Long>, Association> asMap() {
+		Map<Pair<Long, Long>, Association> map = new HashMap<>();
+		for(Association association : values()) {
+			map.put(new Pair<>(association.getPreferenceTagId(), association.getProductTagId()), association);
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	@Override
+	public int size() {
+		return entryValues.length;
+	}
+}
@@ -0,0 +1,123 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ch.ethz.coss.algorithm.utilities.Pair;
+
+/**
+ * The default, thread safe association storage. Associations are kept as objects in concurrent hash maps.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+class ConcurrentAssociationStore implements AssociationStore {
+
+	private static final long serialVersionUID = 1L;
+	private ConcurrentMap<Pair<Long, Long>, Association> matches;
+	/**
+	 * Secondary index of the associations per preference tag id, keyed by product tag id.
+	 * Kept in sync with {@link #matches} so that lookups on a preference tag do not scan the whole map.
+	 */
+	private ConcurrentMap<Long, ConcurrentMap<Long, Association>> preferenceTagIndex;
+	/**
+	 * Reverse index of the associations per product tag id, keyed by preference tag id.
+	 */
+	private ConcurrentMap<Long, ConcurrentMap<Long, Association>> productTagIndex;
+
+	ConcurrentAssociationStore() {
+		this.matches = new ConcurrentHashMap<>();
+		this.preferenceTagIndex = new ConcurrentHashMap<>();
+		this.productTagIndex = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public void put(Association tagPair) {
+		matches.put(new Pair<>(tagPair.getPreferenceTagId(), tagPair.getProductTagId()), tagPair);
+		index(preferenceTagIndex, tagPair.getPreferenceTagId(), tagPair.getProductTagId(), tagPair);
+		index(productTagIndex, tagPair.getProductTagId(), tagPair.getPreferenceTagId(), tagPair);
+	}
+
+	/**
+	 * Stores an association in a secondary index, creating the bucket of the key on first use.
+	 * @param index the secondary index
+	 * @param key the id the index is grouped by
+	 * @param otherKey the id of the other tag of the association, unique within the bucket
+	 * @param tagPair the association
+	 */
+	private static void index(ConcurrentMap<Long, ConcurrentMap<Long, Association>> index, long key, long otherKey, Association tagPair) {
+		ConcurrentMap<Long, Association> bucket = index.get(key);
+		if(bucket == null) {
+			ConcurrentMap<Long, Association> created = new ConcurrentHashMap<>();
+			bucket = index.putIfAbsent(key, created);
+			bucket = bucket == null ? created : bucket;
+		}
+		bucket.put(otherKey, tagPair);
+	}
+
+	@Override
+	public Association get(long preferenceTagId, long productTagId) {
+		ConcurrentMap<Long, Association> indexed = preferenceTagIndex.get(preferenceTagId);
+		return indexed == null ? null : indexed.get(productTagId);
+	}
+
+	@Override
+	public double getValue(long preferenceTagId, long productTagId) {
+		Association association = get(preferenceTagId, productTagId);
+		return association == null ? Double.NaN : association.getAssociationValue();
+	}
+
+	@Override
+	public void forEachOfPreferenceTag(long preferenceTagId, AssociationMap.AssociationConsumer consumer) {
+		ConcurrentMap<Long, Association> indexed = preferenceTagIndex.get(preferenceTagId);
+		if(indexed != null) {
+			for(Association association : indexed.values()) {
+				consumer.accept(preferenceTagId, association.getProductTagId(), association.getAssociationValue());
+			}
+		}
+	}
+
+	@Override
+	public List<Association> findByPreferenceTag(long preferenceTagId) {
+		return values(preferenceTagIndex.get(preferenceTagId));
+	}
+
+	@Override
+	public List<Association> findByProductTag(long productTagId) {
+		return values(productTagIndex.get(productTagId));
+	}
+
+	@Override
+	public boolean containsProductTag(long productTagId) {
+		ConcurrentMap<Long, Association> indexed = productTagIndex.get(productTagId);
+		return indexed != null && !indexed.isEmpty();
+	}
+
+	private static List<Association> values(ConcurrentMap<Long, Association> indexed) {
+		if(indexed == null) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(indexed.values());
+	}
+
+	@Override
+	public Collection<Association> values() {
+		return matches.values();
+	}
+
+	@Override
+	public Map<Pair<Long, Long>, Association> asMap() {
+		return matches;
+	}
+
+	@Override
+	public int size() {
+		return matches.size();
+	}
+}
@@ -0,0 +1,281 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.ethz.coss.algorithm.utilities.LongIntHashMap;
+
+/**
+ * Assigns dense int ordinals to the preference tags, product tags, preferences and products of an ontology, in the
+ * order they are registered. Each kind has its own ordinal space from 0 to the number of registered objects, so that
+ * structures over the ontology can be arrays and bitsets indexed by ordinal instead of hash maps of boxed ids.
+ * Registering an object again returns its existing ordinal. Registering a preference registers its tags, and
+ * registering a product registers its product tag ids.
+ * <p>
+ * The registry is meant to be filled while the ontology is loaded and then shared. Registration is not thread safe.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class OntologyRegistry implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Ordinals<PreferenceTag> preferenceTags = new Ordinals<>();
+	private final Ordinals<ProductTag> productTags = new Ordinals<>();
+	private final Ordinals<Preference> preferences = new Ordinals<>();
+	private final Ordinals<Product> products = new Ordinals<>();
+
+	/* Registration */
+
+	/**
+	 * @param tag
+	 * @return the ordinal of the preference tag
+	 */
+	public int register(PreferenceTag tag) {
+		return preferenceTags.register(tag.getId(), tag);
+	}
+
+	/**
+	 * @param tag
+	 * @return the ordinal of the product tag
+	 */
+	public int register(ProductTag tag) {
+		return productTags.register(tag.getId(), tag);
+	}
+
+	/**
+	 * Registers a product tag known only by id, e.g. from the tag ids of a product.
+	 * @param productTagId
+	 * @return the ordinal of the product tag
+	 */
+	public int registerProductTag(long productTagId) {
+		return productTags.register(productTagId, null);
+	}
+
+	/**
+	 * Registers a preference and its tags.
+	 * @param preference
+	 * @return the ordinal of the preference
+	 */
+	public int register(Preference preference) {
+		for(PreferenceTag tag : preference.getTagList()) {
+			register(tag);
+		}
+		return preferences.register(preference.getId(), preference);
+	}
+
+	/**
+	 * Registers a product and its product tag ids.
+	 * @param product
+	 * @return the ordinal of the product
+	 */
+	public int register(Product product) {
+		ProductTagSet tagIds = product.getTagSet();
+		for(int i = 0; i < tagIds.size(); i++) {
+			registerProductTag(tagIds.get(i));
+		}
+		return products.register(product.getId(), product);
+	}
+
+	/**
+	 * Registers the tags of the associations of a map, without building the pair keys of
+	 * {@link AssociationMap#getAssociations()}.
+	 * @param tagAssociations
+	 */
+	public void register(AssociationMap tagAssociations) {
+		for(Association association : tagAssociations.values()) {
+			preferenceTags.register(association.getPreferenceTagId(), null);
+			registerProductTag(association.getProductTagId());
+		}
+	}
+
+	/* Preference tags */
+
+	/**
+	 * @param preferenceTagId
+	 * @return the ordinal, or -1 if the preference tag is not registered
+	 */
+	public int preferenceTagOrdinal(long preferenceTagId) {
+		return preferenceTags.ordinal(preferenceTagId);
+	}
+
+	public long preferenceTagId(int ordinal) {
+		return preferenceTags.id(ordinal);
+	}
+
+	/**
+	 * @param ordinal
+	 * @return the preference tag, or null if it was registered by id only
+	 */
+	public PreferenceTag getPreferenceTag(int ordinal) {
+		return preferenceTags.get(ordinal);
+	}
+
+	public int preferenceTagCount() {
+		return preferenceTags.size();
+	}
+
+	/**
+	 * @param preference
+	 * @return the sorted ordinals of the registered tags of the preference
+	 */
+	public int[] preferenceTagOrdinals(Preference preference) {
+		List<PreferenceTag> tags = preference.getTagList();
+		int[] ordinals = new int[tags.size()];
+		int count = 0;
+		for(PreferenceTag tag : tags) {
+			int ordinal = preferenceTags.ordinal(tag.getId());
+			if(ordinal >= 0) {
+				ordinals[count++] = ordinal;
+			}
+		}
+		return sorted(ordinals, count);
+	}
+
+	/* Product tags */
+
+	/**
+	 * @param productTagId
+	 * @return the ordinal, or -1 if the product tag is not registered
+	 */
+	public int productTagOrdinal(long productTagId) {
+		return productTags.ordinal(productTagId);
+	}
+
+	public long productTagId(int ordinal) {
+		return productTags.id(ordinal);
+	}
+
+	/**
+	 * @param ordinal
+	 * @return the product tag, or null if it was registered by id only
+	 */
+	public ProductTag getProductTag(int ordinal) {
+		return productTags.get(ordinal);
+	}
+
+	public int productTagCount() {
+		return productTags.size();
+	}
+
+	/**
+	 * @param product
+	 * @return the sorted ordinals of the registered tags of the product
+	 */
+	public int[] productTagOrdinals(Product product) {
+		ProductTagSet tagIds = product.getTagSet();
+		int[] ordinals = new int[tagIds.size()];
+		int count = 0;
+		for(int i = 0; i < tagIds.size(); i++) {
+			int ordinal = productTags.ordinal(tagIds.get(i));
+			if(ordinal >= 0) {
+				ordinals[count++] = ordinal;
+			}
+		}
+		return sorted(ordinals, count);
+	}
+
+	/* Preferences */
+
+	/**
+	 * @param preferenceId
+	 * @return the ordinal, or -1 if the preference is not registered
+	 */
+	public int preferenceOrdinal(long preferenceId) {
+		return preferences.ordinal(preferenceId);
+	}
+
+	public long preferenceId(int ordinal) {
+		return preferences.id(ordinal);
+	}
+
+	public Preference getPreference(int ordinal) {
+		return preferences.get(ordinal);
+	}
+
+	public int preferenceCount() {
+		return preferences.size();
+	}
+
+	/* Products */
+
+	/**
+	 * @param productId
+	 * @return the ordinal, or -1 if the product is not registered
+	 */
+	public int productOrdinal(long productId) {
+		return products.ordinal(productId);
+	}
+
+	public long productId(int ordinal) {
+		return products.id(ordinal);
+	}
+
+	public Product getProduct(int ordinal) {
+		return products.get(ordinal);
+	}
+
+	public int productCount() {
+		return products.size();
+	}
+
+	private static int[] sorted(int[] ordinals, int count) {
+		int[] result = count == ordinals.length ? ordinals : Arrays.copyOf(ordinals, count);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * One ordinal space: ids to ordinals, and ordinals to ids and objects.
+	 */
+	private static class Ordinals<T> implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final LongIntHashMap ordinals = new LongIntHashMap();
+		private long[] ids = new long[16];
+		private final List<T> objects = new ArrayList<>();
+
+		int register(long id, T object) {
+			int ordinal = ordinals.get(id);
+			if(ordinal != LongIntHashMap.MISSING) {
+				//an object registered by id only can be completed later
+				if(objects.get(ordinal) == null) {
+					objects.set(ordinal, object);
+				}
+				return ordinal;
+			}
+			ordinal = objects.size();
+			if(ordinal == ids.length) {
+				ids = Arrays.copyOf(ids, ordinal << 1);
+			}
+			ids[ordinal] = id;
+			objects.add(object);
+			ordinals.put(id, ordinal);
+			return ordinal;
+		}
+
+		int ordinal(long id) {
+			return ordinals.get(id);
+		}
+
+		long id(int ordinal) {
+			if(ordinal < 0 || ordinal >= objects.size()) {
+				throw new IndexOutOfBoundsException("Unknown ordinal: " + ordinal);
+			}
+			return ids[ordinal];
+		}
+
+		T get(int ordinal) {
+			return objects.get(ordinal);
+		}
+
+		int size() {
+			return objects.size();
+		}
+	}
+}
@@ -0,0 +1,471 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A compact binary snapshot of the rating state: the preference and product tags, the preferences with their tags,
+ * the products with their tags and the associations. Unlike Java serialization, the format does not depend on the
+ * layout of the classes, and a snapshot is opened by memory mapping the file and reading the associations in bulk
+ * as the primitive columns of {@link CompiledAssociations}, so that a fresh process can start rating without parsing
+ * text, creating an object per association or rebuilding indices.
+ * <p>
+ * A snapshot starts with a header of a magic number, the {@link #FORMAT_VERSION}, the length of the payload and
+ * the CRC32 of the payload, all big endian. Snapshots of another format version, truncated or corrupt snapshots are
+ * rejected with an {@link IOException} when they are opened. The file is mapped in segments, so it may exceed the
+ * 2 GB of a single mapping.
+ * Users are not part of a snapshot.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class OntologySnapshot {
+
+	/** "VSDS" */
+	public static final int MAGIC = 0x56534453;
+	/** incremented on every change of the layout */
+	public static final int FORMAT_VERSION = 2;
+
+	/** the size of the mapped segments of a snapshot file */
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+	/* magic, format version, payload length, payload checksum */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+	private final Map<Long, PreferenceTag> preferenceTags;
+	private final Map<Long, ProductTag> productTags;
+	private final Map<Long, Preference> preferences;
+	private final Map<Long, Product> products;
+	private final CompiledAssociations associations;
+
+	private OntologySnapshot(Map<Long, PreferenceTag> preferenceTags, Map<Long, ProductTag> productTags,
+			Map<Long, Preference> preferences, Map<Long, Product> products, CompiledAssociations associations) {
+		this.preferenceTags = preferenceTags;
+		this.productTags = productTags;
+		this.preferences = preferences;
+		this.products = products;
+		this.associations = associations;
+	}
+
+	/* Writing */
+
+	/**
+	 * Writes a snapshot, replacing any existing file. The tags of the preferences are written even if they are
+	 * missing from the preference tags.
+	 * @param path the snapshot file
+	 * @param preferenceTags the preference tags
+	 * @param productTags the product tags
+	 * @param preferences the preferences
+	 * @param products the products
+	 * @param associations the association map
+	 * @throws IOException
+	 */
+	public static void write(Path path, Collection<PreferenceTag> preferenceTags, Collection<ProductTag> productTags,
+			Collection<Preference> preferences, Collection<Product> products, AssociationMap associations) throws IOException {
+		Map<Long, PreferenceTag> allPreferenceTags = new LinkedHashMap<>();
+		for(PreferenceTag tag : preferenceTags) {
+			allPreferenceTags.put(tag.getId(), tag);
+		}
+		for(Preference preference : preferences) {
+			for(PreferenceTag tag : preference.getTagList()) {
+				allPreferenceTags.putIfAbsent(tag.getId(), tag);
+			}
+		}
+
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			channel.position(HEADER_SIZE);
+			CRC32 checksum = new CRC32();
+			//not closed, that would close the channel before the header is written
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), checksum), 1 << 16));
+
+			writeTags(out, allPreferenceTags.values());
+			writeTags(out, productTags);
+
+			out.writeInt(preferences.size());
+			for(Preference preference : preferences) {
+				out.writeLong(preference.getId());
+				writeString(out, preference.getName());
+				writeString(out, preference.getTranslation());
+				out.writeLong(preference.getVersionIn());
+				out.writeLong(preference.getVersionOut());
+				out.writeLong(preference.getCatId());
+				List<PreferenceTag> tags = preference.getTagList();
+				out.writeInt(tags.size());
+				for(int i = 0; i < tags.size(); i++) {
+					out.writeLong(tags.get(i).getId());
+				}
+			}
+
+			out.writeInt(products.size());
+			for(Product product : products) {
+				out.writeLong(product.getId());
+				writeString(out, product.getEan());
+				writeString(out, product.getName());
+				writeString(out, product.getBrand());
+				writeString(out, product.getIngredients());
+				writeString(out, product.getDescription());
+				ProductTagSet tags = product.getTagSet();
+				out.writeInt(tags.size());
+				for(int i = 0; i < tags.size(); i++) {
+					out.writeLong(tags.get(i));
+				}
+				Map<Long, Integer> categories = product.getCategories() == null ? new HashMap<>() : product.getCategories();
+				out.writeInt(categories.size());
+				for(Map.Entry<Long, Integer> categoryAndLevel : categories.entrySet()) {
+					out.writeLong(categoryAndLevel.getKey());
+					out.writeInt(categoryAndLevel.getValue());
+				}
+			}
+
+			//the associations in compiled layout, compiled from one copy so the columns stay aligned while
+			//associations are added concurrently
+			associations.compile().writeColumns(out);
+			out.flush();
+
+			long payloadLength = channel.position() - HEADER_SIZE;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(payloadLength).putLong(checksum.getValue());
+			//through Buffer, the covariant ByteBuffer overloads do not exist on Java 8
+			((Buffer) header).flip();
+			while(header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		}
+	}
+
+	private static void writeTags(DataOutputStream out, Collection<? extends Tag> tags) throws IOException {
+		out.writeInt(tags.size());
+		for(Tag tag : tags) {
+			out.writeLong(tag.getId());
+			writeString(out, tag.getName());
+			out.writeLong(tag.getVersionIn());
+			out.writeLong(tag.getVersionOut());
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if(value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+
+	/* Reading */
+
+	/**
+	 * Opens a snapshot by memory mapping the file, in segments of {@link #DEFAULT_SEGMENT_SIZE}. The associations are
+	 * read in bulk into {@link CompiledAssociations}, without creating an object per association.
+	 * @param path the snapshot file
+	 * @return the snapshot
+	 * @throws IOException if the file cannot be read, is not a snapshot, has another format version, is truncated
+	 * or does not match its checksum
+	 */
+	public static OntologySnapshot open(Path path) throws IOException {
+		return open(path, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Opens a snapshot by memory mapping the file.
+	 * @param path the snapshot file
+	 * @param segmentSize the size of each mapped segment of the file, at least 8 bytes and at most 2 GB
+	 * @return the snapshot
+	 * @throws IOException if the file cannot be read, is not a snapshot, has another format version, is truncated
+	 * or does not match its checksum
+	 */
+	public static OntologySnapshot open(Path path, int segmentSize) throws IOException {
+		if(segmentSize < Long.BYTES) {
+			throw new IllegalArgumentException("segment size must be at least 8 bytes: " + segmentSize);
+		}
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_SIZE) {
+				throw new IOException("Not an ontology snapshot: " + path);
+			}
+			MappedInput in = new MappedInput(channel, channel.size(), segmentSize);
+			if(in.getInt() != MAGIC) {
+				throw new IOException("Not an ontology snapshot: " + path);
+			}
+			int formatVersion = in.getInt();
+			if(formatVersion != FORMAT_VERSION) {
+				throw new IOException("Unsupported snapshot format version " + formatVersion + ", expected " + FORMAT_VERSION + ": " + path);
+			}
+			long payloadLength = in.getLong();
+			long expectedChecksum = in.getLong();
+			if(payloadLength < 0 || payloadLength != in.remaining()) {
+				throw new IOException("Truncated snapshot, " + in.remaining() + " of " + payloadLength + " bytes: " + path);
+			}
+			if(in.checksum() != expectedChecksum) {
+				throw new IOException("Snapshot checksum mismatch: " + path);
+			}
+
+			try {
+				return read(in);
+			} catch(BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+				throw new IOException("Corrupt snapshot: " + path, e);
+			}
+		}
+	}
+
+	private static OntologySnapshot read(MappedInput in) throws IOException {
+		Map<Long, PreferenceTag> preferenceTags = new HashMap<>();
+		int count = in.getInt();
+		for(int i = 0; i < count; i++) {
+			long id = in.getLong();
+			PreferenceTag tag = new PreferenceTag(id, in.getString(), in.getLong(), in.getLong());
+			preferenceTags.put(id, tag);
+		}
+		Map<Long, ProductTag> productTags = new HashMap<>();
+		count = in.getInt();
+		for(int i = 0; i < count; i++) {
+			long id = in.getLong();
+			ProductTag tag = new ProductTag(id, in.getString(), in.getLong(), in.getLong());
+			productTags.put(id, tag);
+		}
+
+		Map<Long, Preference> preferences = new HashMap<>();
+		count = in.getInt();
+		for(int i = 0; i < count; i++) {
+			long id = in.getLong();
+			String name = in.getString();
+			String translation = in.getString();
+			Preference preference = new Preference(name, translation, id, in.getLong(), in.getLong());
+			preference.setCatId(in.getLong());
+			Map<Long, PreferenceTag> tags = new HashMap<>();
+			int tagCount = in.getInt();
+			for(int tag = 0; tag < tagCount; tag++) {
+				long tagId = in.getLong();
+				PreferenceTag preferenceTag = preferenceTags.get(tagId);
+				if(preferenceTag == null) {
+					throw new IOException("Snapshot preference " + id + " refers to unknown preference tag " + tagId);
+				}
+				tags.put(tagId, preferenceTag);
+			}
+			preference.setTags(tags);
+			preferences.put(id, preference);
+		}
+
+		Map<Long, Product> products = new HashMap<>();
+		ProductTagSetInterner interner = new ProductTagSetInterner();
+		count = in.getInt();
+		for(int i = 0; i < count; i++) {
+			long id = in.getLong();
+			String ean = in.getString();
+			Product product = new Product(ean, id, in.getString(), in.getString(), in.getString());
+			product.setDescription(in.getString());
+			long[] tagIds = in.getLongs();
+			product.setTags(ProductTagSet.of(tagIds));
+			interner.intern(product);
+			int categoryCount = in.getInt();
+			Map<Long, Integer> categories = new HashMap<>();
+			for(int category = 0; category < categoryCount; category++) {
+				categories.put(in.getLong(), in.getInt());
+			}
+			product.setCategories(categories);
+			products.put(id, product);
+		}
+
+		long[] preferenceTagIds = in.getLongs();
+		long[] productTagIds = in.getLongs();
+		int[] offsets = in.getInts();
+		int[] entryProductTags = in.getInts();
+		double[] entryValues = in.getDoubles();
+		double[] positiveSums = in.getDoubles();
+		double[] negativeSums = in.getDoubles();
+		int[] columnOffsets = in.getInts();
+		int[] columnEntries = in.getInts();
+		int[] columnPreferenceTags = in.getInts();
+		if(in.remaining() > 0) {
+			throw new IOException("Snapshot has " + in.remaining() + " trailing bytes");
+		}
+		if(offsets.length != preferenceTagIds.length + 1 || columnOffsets.length != productTagIds.length + 1
+				|| offsets[preferenceTagIds.length] != entryValues.length || columnOffsets[productTagIds.length] != entryValues.length) {
+			throw new IOException("Snapshot association columns do not match");
+		}
+		CompiledAssociations associations = new CompiledAssociations(preferenceTagIds, productTagIds, offsets, entryProductTags, entryValues,
+				positiveSums, negativeSums, columnOffsets, columnEntries, columnPreferenceTags);
+		return new OntologySnapshot(preferenceTags, productTags, preferences, products, associations);
+	}
+
+	/**
+	 * Reads a file through read only mappings of consecutive segments, so that files larger than one mapping can be
+	 * read. Single values never span two segments, arrays are read in bulk from each segment they span.
+	 */
+	private static final class MappedInput {
+		private final FileChannel channel;
+		private final long size;
+		private final int segmentSize;
+		private long segmentStart;
+		private MappedByteBuffer segment;
+
+		MappedInput(FileChannel channel, long size, int segmentSize) throws IOException {
+			this.channel = channel;
+			this.size = size;
+			this.segmentSize = segmentSize;
+			map(0);
+		}
+
+		private void map(long position) throws IOException {
+			segmentStart = position;
+			segment = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+		}
+
+		private long position() {
+			return segmentStart + segment.position();
+		}
+
+		long remaining() {
+			return size - position();
+		}
+
+		/**
+		 * Maps the next segment from the current position if fewer than the given bytes are left in the current one.
+		 */
+		private ByteBuffer require(int bytes) throws IOException {
+			if(segment.remaining() < bytes) {
+				if(remaining() < bytes) {
+					throw new BufferUnderflowException();
+				}
+				map(position());
+			}
+			return segment;
+		}
+
+		/**
+		 * @return the CRC32 of the bytes after the current position, which is left unchanged
+		 */
+		long checksum() throws IOException {
+			long position = position();
+			CRC32 checksum = new CRC32();
+			while(remaining() > 0) {
+				if(!segment.hasRemaining()) {
+					map(position());
+				}
+				checksum.update(segment);
+			}
+			map(position);
+			return checksum.getValue();
+		}
+
+		int getInt() throws IOException {
+			return require(Integer.BYTES).getInt();
+		}
+
+		long getLong() throws IOException {
+			return require(Long.BYTES).getLong();
+		}
+
+		long[] getLongs() throws IOException {
+			long[] values = new long[getInt()];
+			for(int read = 0; read < values.length;) {
+				int count = Math.min(require(Long.BYTES).remaining()/Long.BYTES, values.length - read);
+				segment.asLongBuffer().get(values, read, count);
+				skip(count*Long.BYTES);
+				read += count;
+			}
+			return values;
+		}
+
+		int[] getInts() throws IOException {
+			int[] values = new int[getInt()];
+			for(int read = 0; read < values.length;) {
+				int count = Math.min(require(Integer.BYTES).remaining()/Integer.BYTES, values.length - read);
+				segment.asIntBuffer().get(values, read, count);
+				skip(count*Integer.BYTES);
+				read += count;
+			}
+			return values;
+		}
+
+		double[] getDoubles() throws IOException {
+			double[] values = new double[getInt()];
+			for(int read = 0; read < values.length;) {
+				int count = Math.min(require(Double.BYTES).remaining()/Double.BYTES, values.length - read);
+				segment.asDoubleBuffer().get(values, read, count);
+				skip(count*Double.BYTES);
+				read += count;
+			}
+			return values;
+		}
+
+		String getString() throws IOException {
+			int length = getInt();
+			if(length < 0) {
+				return null;
+			}
+			byte[] utf8 = new byte[length];
+			for(int read = 0; read < length;) {
+				int count = Math.min(require(1).remaining(), length - read);
+				segment.get(utf8, read, count);
+				read += count;
+			}
+			return new String(utf8, StandardCharsets.UTF_8);
+		}
+
+		private void skip(int bytes) {
+			//through Buffer, the covariant ByteBuffer overloads do not exist on Java 8
+			((Buffer) segment).position(segment.position() + bytes);
+		}
+	}
+
+	/*Getters*/
+
+	/**
+	 * @return the preference tags by id
+	 */
+	public Map<Long, PreferenceTag> getPreferenceTags() {
+		return preferenceTags;
+	}
+
+	/**
+	 * @return the product tags by id
+	 */
+	public Map<Long, ProductTag> getProductTags() {
+		return productTags;
+	}
+
+	/**
+	 * @return the preferences by id, with the preference tags of the snapshot
+	 */
+	public Map<Long, Preference> getPreferences() {
+		return preferences;
+	}
+
+	/**
+	 * @return the products by id, products with equal tags share their tag set
+	 */
+	public Map<Long, Product> getProducts() {
+		return products;
+	}
+
+	/**
+	 * @return a read only association map backed by the compiled associations
+	 */
+	public AssociationMap getAssociations() {
+		return associations.asAssociationMap();
+	}
+
+	public CompiledAssociations getCompiledAssociations() {
+		return associations;
+	}
+}
@@ -0,0 +1,206 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.ethz.coss.algorithm.utilities.LongIntHashMap;
+import ch.ethz.coss.algorithm.utilities.Pair;
+
+/**
+ * A primitive association storage. Each (preference tag id, product tag id) pair is packed in a single long key
+ * and association values are kept in a double array, so no objects are held per association.
+ * The entries of a preference tag and of a product tag are chained through int arrays, which keeps the lookups
+ * from either side proportional to their result.
+ * Tag ids need to fit in 32 unsigned bits. Writes are synchronized, reads are not, so the store should be
+ * populated before it is shared with reading threads.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+class PackedAssociationStore implements AssociationStore {
+
+	private static final long serialVersionUID = 1L;
+	private static final long MAX_TAG_ID = 0xFFFFFFFFL;
+	private static final int END = -1;
+
+	/* entry columns, indexed by insertion order */
+	private long[] keys;
+	private double[] values;
+	private int[] nextOfPreferenceTag;
+	private int[] nextOfProductTag;
+	private int size;
+
+	/* packed key to entry, and tag ids to the last entry of their chain */
+	private LongIntHashMap entries;
+	private LongIntHashMap preferenceTagHeads;
+	private LongIntHashMap productTagHeads;
+
+	PackedAssociationStore(int expectedSize) {
+		int capacity = Math.max(expectedSize, 16);
+		this.keys = new long[capacity];
+		this.values = new double[capacity];
+		this.nextOfPreferenceTag = new int[capacity];
+		this.nextOfProductTag = new int[capacity];
+		this.entries = new LongIntHashMap(capacity);
+		this.preferenceTagHeads = new LongIntHashMap();
+		this.productTagHeads = new LongIntHashMap();
+	}
+
+	PackedAssociationStore() {
+		this(16);
+	}
+
+	/**
+	 * Packs a tag pair into one key, preference tag id in the high and product tag id in the low 32 bits.
+	 * @param preferenceTagId
+	 * @param productTagId
+	 * @return the packed key
+	 */
+	static long pack(long preferenceTagId, long productTagId) {
+		return (preferenceTagId << 32) | productTagId;
+	}
+
+	static long preferenceTagIdOf(long key) {
+		return key >>> 32;
+	}
+
+	static long productTagIdOf(long key) {
+		return key & MAX_TAG_ID;
+	}
+
+	private static boolean isPackable(long tagId) {
+		return tagId >= 0 && tagId <= MAX_TAG_ID;
+	}
+
+	@Override
+	public synchronized void put(Association association) {
+		long preferenceTagId = association.getPreferenceTagId();
+		long productTagId = association.getProductTagId();
+		if(!isPackable(preferenceTagId) || !isPackable(productTagId)) {
+			throw new IllegalArgumentException("Tag ids of a packed association map must be between 0 and " + MAX_TAG_ID
+					+ ", got preference tag: " + preferenceTagId + ", product tag: " + productTagId);
+		}
+		long key = pack(preferenceTagId, productTagId);
+		int entry = entries.get(key);
+		if(entry != LongIntHashMap.MISSING) {
+			values[entry] = association.getAssociationValue();
+			return;
+		}
+		if(size == keys.length) {
+			int capacity = keys.length << 1;
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+			nextOfPreferenceTag = Arrays.copyOf(nextOfPreferenceTag, capacity);
+			nextOfProductTag = Arrays.copyOf(nextOfProductTag, capacity);
+		}
+		entry = size++;
+		keys[entry] = key;
+		values[entry] = association.getAssociationValue();
+		nextOfPreferenceTag[entry] = chain(preferenceTagHeads, preferenceTagId, entry);
+		nextOfProductTag[entry] = chain(productTagHeads, productTagId, entry);
+		entries.put(key, entry);
+	}
+
+	/**
+	 * Makes the entry the head of the chain of a tag.
+	 * @return the previous head of the chain, or {@link #END}
+	 */
+	private static int chain(LongIntHashMap heads, long tagId, int entry) {
+		int previous = heads.put(tagId, entry);
+		return previous == LongIntHashMap.MISSING ? END : previous;
+	}
+
+	@Override
+	public Association get(long preferenceTagId, long productTagId) {
+		int entry = entryOf(preferenceTagId, productTagId);
+		return entry == LongIntHashMap.MISSING ? null : toAssociation(entry);
+	}
+
+	@Override
+	public double getValue(long preferenceTagId, long productTagId) {
+		int entry = entryOf(preferenceTagId, productTagId);
+		return entry == LongIntHashMap.MISSING ? Double.NaN : values[entry];
+	}
+
+	private int entryOf(long preferenceTagId, long productTagId) {
+		if(!isPackable(preferenceTagId) || !isPackable(productTagId)) {
+			return LongIntHashMap.MISSING;
+		}
+		return entries.get(pack(preferenceTagId, productTagId));
+	}
+
+	@Override
+	public void forEachOfPreferenceTag(long preferenceTagId, AssociationMap.AssociationConsumer consumer) {
+		int entry = preferenceTagHeads.get(preferenceTagId);
+		while(entry != END) {
+			consumer.accept(preferenceTagId, productTagIdOf(keys[entry]), values[entry]);
+			entry = nextOfPreferenceTag[entry];
+		}
+	}
+
+	@Override
+	public List<Association> findByPreferenceTag(long preferenceTagId) {
+		List<Association> associations = new ArrayList<>();
+		int entry = preferenceTagHeads.get(preferenceTagId);
+		while(entry != END) {
+			associations.add(toAssociation(entry));
+			entry = nextOfPreferenceTag[entry];
+		}
+		return associations;
+	}
+
+	@Override
+	public List<Association> findByProductTag(long productTagId) {
+		List<Association> associations = new ArrayList<>();
+		int entry = productTagHeads.get(productTagId);
+		while(entry != END) {
+			associations.add(toAssociation(entry));
+			entry = nextOfProductTag[entry];
+		}
+		return associations;
+	}
+
+	@Override
+	public boolean containsProductTag(long productTagId) {
+		return productTagHeads.get(productTagId) != END;
+	}
+
+	private Association toAssociation(int entry) {
+		long key = keys[entry];
+		return new Association(productTagIdOf(key), preferenceTagIdOf(key), values[entry]);
+	}
+
+	@Override
+	public Collection<Association> values() {
+		List<Association> associations = new ArrayList<>(size);
+		for(int entry = 0; entry < size; entry++) {
+			associations.add(toAssociation(entry));
+		}
+		return associations;
+	}
+
+	/**
+	 * Materializes all associations. The result is a read only copy, not a view.
+	 */
+	@Override
+	public Map<Pair<Long, Long>, Association> asMap() {
+		Map<Pair<Long, Long>, Association> map = new HashMap<>();
+		for(int entry = 0; entry < size; entry++) {
+			long key = keys[entry];
+			map.put(new Pair<>(preferenceTagIdOf(key), productTagIdOf(key)), toAssociation(entry));
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
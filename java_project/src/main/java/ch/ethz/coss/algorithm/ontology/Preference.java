@@ -1,6 +1,10 @@
 package ch.ethz.coss.algorithm.ontology;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -24,6 +28,13 @@ public class Preference implements Serializable{
 	private String name;
 	private String translation;
 	private Map<Long, PreferenceTag> tags;
+	/**
+	 * Read only view of the tags for the scoring path, rebuilt whenever the tags change.
+	 */
+	private transient List<PreferenceTag> tagList;
+	/* a new stamp of the VersionSequence whenever the tags change, written after the change and volatile so that a
+	 * thread reading the new stamp also sees the new tags */
+	private transient volatile long tagVersion;
 	
 	long id;
 	long versionIn;
@@ -63,6 +74,8 @@ public class Preference implements Serializable{
 	public Preference(String name, String translation, long id, long versionIn, long versionOut) {
 		this.name = name;
 		this.tags = new HashMap<>();
+		this.tagList = Collections.emptyList();
+		this.tagVersion = VersionSequence.next();
 		this.id = id;
 		this.versionIn = versionIn;
 		this.versionOut = versionOut;
@@ -76,6 +89,7 @@ public class Preference implements Serializable{
 	public void addTag(PreferenceTag tag) {
 		if (tag instanceof PreferenceTag) {
 			tags.put(tag.getId(), tag);
+			refreshTagList();
 		} else {
 			throw new IllegalStateException("Adding a non-preference tag to preference: " + id);
 		}
@@ -115,6 +129,42 @@ public class Preference implements Serializable{
 	public Set<Long> getTagIds() {
 		return new HashSet<>(tags.keySet());
 	}
+
+	/**
+	 * The tags of the preference without copying, for the scoring path. The list is a snapshot, that is replaced
+	 * when a tag is added.
+	 * @return a read only list of the tags, in a fixed order
+	 */
+	public List<PreferenceTag> getTagList() {
+		return tagList;
+	}
+
+	/**
+	 * @return a stamp that changes whenever the tags of the preference change, unique across preferences
+	 */
+	public long getTagVersion() {
+		return tagVersion;
+	}
+
+	/**
+	 * @return the number of tags of the preference
+	 */
+	public int getTagCount() {
+		return tagList.size();
+	}
+
+	private void refreshTagList() {
+		tagList = Collections.unmodifiableList(Arrays.asList(tags.values().toArray(new PreferenceTag[tags.size()])));
+		tagVersion = VersionSequence.next();
+	}
+
+	/**
+	 * The tag list is not serialized.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		refreshTagList();
+	}
 	
 
 	@Override
@@ -163,8 +213,13 @@ public class Preference implements Serializable{
 	}
 
 
+	/**
+	 * Replaces the tags of the preference. Later changes to the given map are not reflected in {@link #getTagList()}.
+	 * @param tags
+	 */
 	public void setTags(Map<Long, PreferenceTag> tags) {
 		this.tags = tags;
+		refreshTagList();
 	}
 
 
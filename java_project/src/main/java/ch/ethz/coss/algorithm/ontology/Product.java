@@ -1,8 +1,11 @@
 package ch.ethz.coss.algorithm.ontology;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -17,9 +20,28 @@ import java.util.Set;
 public class Product implements Serializable{
 
 	private static final long serialVersionUID = 1L;
+	/**
+	 * The serialized form of the product, unchanged since the tags were a {@code Set<Long>}. The tags are read from any
+	 * set and written as a {@link ProductTagSet}.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("ean", String.class),
+			new ObjectStreamField("id", long.class),
+			new ObjectStreamField("tags", Set.class),
+			new ObjectStreamField("categories", Map.class),
+			new ObjectStreamField("name", String.class),
+			new ObjectStreamField("brand", String.class),
+			new ObjectStreamField("ingredients", String.class),
+			new ObjectStreamField("description", String.class)
+	};
 	private String ean;
 	private long id;
-	private Set<Long> tags;
+	private ProductTagSet tags;
+	/* a new stamp of the VersionSequence whenever the tags change, written after the change and volatile so that a
+	 * thread reading the new stamp also sees the new tags */
+	private transient volatile long tagVersion;
+	/* whether a tag has associations, cached by AssociationMap#hasTagInformation */
+	transient AssociationMap.Reachability reachability;
 	private Map<Long, Integer> categories;
 	private String name;
 	private String brand;
@@ -50,8 +72,9 @@ public class Product implements Serializable{
 		this.name = name;
 		this.brand = brand;
 		this.ingredients = ingredients;
-		this.tags = new HashSet<>();
+		this.tags = ProductTagSet.EMPTY;
 		this.categories = new HashMap<>();
+		this.tagVersion = VersionSequence.next();
 	}
 	
 	
@@ -60,7 +83,8 @@ public class Product implements Serializable{
 	 * @param tag
 	 */
 	public void addTagId(long tag){
-		tags.add(tag);
+		tags = tags.with(tag);
+		tagVersion = VersionSequence.next();
 	}
 	
 	
@@ -87,7 +111,8 @@ public class Product implements Serializable{
 	 * @param tags
 	 */
 	public void addTagIds(Collection<Long> tagIds){
-		this.tags.addAll(tagIds);
+		this.tags = tags.union(ProductTagSet.of(tagIds));
+		tagVersion = VersionSequence.next();
 	}
 	
 	/**
@@ -95,11 +120,12 @@ public class Product implements Serializable{
 	 * @param tagIds
 	 */
 	public void addTagIds(Long ... tagIds){
-		Set<Long> uniqueTags = new HashSet<>();
-		for(Long tag : tagIds){
-			uniqueTags.add(tag);
+		long[] uniqueTags = new long[tagIds.length];
+		for(int i = 0; i < tagIds.length; i++){
+			uniqueTags[i] = tagIds[i];
 		}
-		addTagIds(uniqueTags);
+		this.tags = tags.union(ProductTagSet.of(uniqueTags));
+		tagVersion = VersionSequence.next();
 	}
 	
 	/**
@@ -107,11 +133,12 @@ public class Product implements Serializable{
 	 * @param tagIds
 	 */
 	public void addTags(ProductTag ... tagIds){
-		Set<Long> uniqueTags = new HashSet<>();
-		for(ProductTag tag : tagIds){
-			uniqueTags.add(tag.getId());
+		long[] uniqueTags = new long[tagIds.length];
+		for(int i = 0; i < tagIds.length; i++){
+			uniqueTags[i] = tagIds[i].getId();
 		}
-		addTagIds(uniqueTags);
+		this.tags = tags.union(ProductTagSet.of(uniqueTags));
+		tagVersion = VersionSequence.next();
 	}
 
 	
@@ -126,9 +153,40 @@ public class Product implements Serializable{
 	}
 
 
+	/**
+	 * The returned set is read only. Before the tags were kept in a {@link ProductTagSet} this was the modifiable
+	 * internal set, tags are now changed with {@link #addTagId(long)}, the other add methods or {@link #setTags(Set)}.
+	 * @return the read only tag ids of the product, in ascending order
+	 * @throws UnsupportedOperationException on any modification of the returned set
+	 */
 	public Set<Long> getTagIds() {
 		return tags;
 	}
+
+	/**
+	 * Replaces the tag set with an equal, shared instance. The version is kept since the tags do not change.
+	 * @param tags a set equal to the current tags
+	 */
+	void shareTags(ProductTagSet tags) {
+		if(!tags.equals(this.tags)) {
+			throw new IllegalArgumentException("Shared tags differ from the tags of product: " + id);
+		}
+		this.tags = tags;
+	}
+
+	/**
+	 * @return a stamp that changes whenever tags are assigned to the product, unique across products
+	 */
+	public long getTagVersion() {
+		return tagVersion;
+	}
+
+	/**
+	 * @return the tag ids of the product, with primitive membership and intersection
+	 */
+	public ProductTagSet getTagSet() {
+		return tags;
+	}
 	
 	public Map<Long, Integer> getCategories() {
 		return categories;
@@ -151,6 +209,9 @@ public class Product implements Serializable{
 		return strb.toString();
 	}
 
+	/**
+	 * @return the read only tag ids of the product, as {@link #getTagIds()}
+	 */
 	public Set<Long> getTags() {
 		return tags;
 	}
@@ -176,7 +237,8 @@ public class Product implements Serializable{
 	}
 
 	public void setTags(Set<Long> tags) {
-		this.tags = tags;
+		this.tags = ProductTagSet.of(tags);
+		tagVersion = VersionSequence.next();
 	}
 
 	public void setCategories(Map<Long, Integer> categories) {
@@ -202,5 +264,37 @@ public class Product implements Serializable{
 	public void setDescription(String description) {
 		this.description = description;
 	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("ean", ean);
+		fields.put("id", id);
+		fields.put("tags", tags);
+		fields.put("categories", categories);
+		fields.put("name", name);
+		fields.put("brand", brand);
+		fields.put("ingredients", ingredients);
+		fields.put("description", description);
+		out.writeFields();
+	}
+
+	/**
+	 * Reads products written with any set of tags. A deserialized product receives a new tag version, since it is a
+	 * different object than the serialized one.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		ean = (String) fields.get("ean", null);
+		id = fields.get("id", 0L);
+		Set<Long> tagIds = (Set<Long>) fields.get("tags", null);
+		tags = tagIds == null ? ProductTagSet.EMPTY : ProductTagSet.of(tagIds);
+		categories = (Map<Long, Integer>) fields.get("categories", null);
+		name = (String) fields.get("name", null);
+		brand = (String) fields.get("brand", null);
+		ingredients = (String) fields.get("ingredients", null);
+		description = (String) fields.get("description", null);
+		tagVersion = VersionSequence.next();
+	}
 	
 }
@@ -0,0 +1,418 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.ethz.coss.algorithm.utilities.LongIntHashMap;
+
+/**
+ * An immutable product catalog in columnar layout. The data needed for scoring, i.e. the product ids and their tag
+ * ids, are kept in primitive arrays, with the tags of all products in one array in compressed sparse row layout.
+ * The descriptive data, i.e. the EAN, name, brand, ingredients, description and categories, are kept apart. The texts
+ * are UTF-8 bytes outside of the heap, in a direct buffer or, for a catalog created by
+ * {@link #mapped(Collection, Path)}, in a memory mapped file whose pages are only loaded when a text is read, e.g. by a
+ * user interface. Rating a whole catalog then reads a few compact arrays instead of one object graph per product.
+ * <p>
+ * Products are referred to by their ordinal, in ascending product id. The catalog is a snapshot of the products at
+ * construction time and safe to share between threads.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class ProductCatalog implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/* hot columns, read when rating */
+	private final long[] productIds;
+	private final LongIntHashMap productOrdinals;
+	private final TagColumns tags;
+	private transient volatile ProductTagIndex tagIndex;
+
+	/* cold columns, read when displaying */
+	private final Descriptions descriptions;
+
+	/**
+	 * Constructor, copies the products into columns.
+	 * @param products the products of the catalog, with distinct ids
+	 */
+	public ProductCatalog(Collection<Product> products) {
+		this(sorted(products));
+	}
+
+	private ProductCatalog(List<Product> sorted) {
+		this(sorted, Descriptions.direct(sorted));
+	}
+
+	private ProductCatalog(List<Product> sorted, Descriptions descriptions) {
+		this.productIds = new long[sorted.size()];
+		this.productOrdinals = new LongIntHashMap(sorted.size());
+		for(int ordinal = 0; ordinal < productIds.length; ordinal++) {
+			productIds[ordinal] = sorted.get(ordinal).getId();
+			if(productOrdinals.put(productIds[ordinal], ordinal) != LongIntHashMap.MISSING) {
+				throw new IllegalArgumentException("Duplicate product id: " + productIds[ordinal]);
+			}
+		}
+		this.tags = TagColumns.of(sorted);
+		this.descriptions = descriptions;
+	}
+
+	/**
+	 * Creates a catalog with the texts of the products written to a file, which is then memory mapped. The file is
+	 * overwritten and must not be changed while the catalog is used. A serialized catalog holds the texts itself and
+	 * is deserialized with a direct buffer.
+	 * @param products the products of the catalog, with distinct ids
+	 * @param descriptionsFile the file of the texts
+	 * @return the catalog
+	 * @throws IOException
+	 */
+	public static ProductCatalog mapped(Collection<Product> products, Path descriptionsFile) throws IOException {
+		List<Product> sorted = sorted(products);
+		return new ProductCatalog(sorted, Descriptions.mapped(sorted, descriptionsFile));
+	}
+
+	private static List<Product> sorted(Collection<Product> products) {
+		List<Product> sorted = new ArrayList<>(products);
+		sorted.sort((p1, p2) -> Long.compare(p1.getId(), p2.getId()));
+		return sorted;
+	}
+
+	/* Scoring columns */
+
+	/**
+	 * @return the number of products
+	 */
+	public int size() {
+		return productIds.length;
+	}
+
+	/**
+	 * @param ordinal between 0 and the number of products
+	 * @return the id of the product
+	 */
+	public long productId(int ordinal) {
+		return productIds[ordinal];
+	}
+
+	/**
+	 * @param productId
+	 * @return the ordinal of the product, or -1 if it is not in the catalog
+	 */
+	public int ordinal(long productId) {
+		return productOrdinals.get(productId);
+	}
+
+	/**
+	 * @param ordinal
+	 * @return the first position of the tags of the product in {@link #tagIdAt(int)}
+	 */
+	public int tagStart(int ordinal) {
+		return tags.offsets[ordinal];
+	}
+
+	/**
+	 * @param ordinal
+	 * @return the position after the last tag of the product in {@link #tagIdAt(int)}
+	 */
+	public int tagEnd(int ordinal) {
+		return tags.offsets[ordinal + 1];
+	}
+
+	/**
+	 * @param position
+	 * @return the product tag id at the position, the tags of a product are in ascending order
+	 */
+	public long tagIdAt(int position) {
+		return tags.ids[position];
+	}
+
+	/**
+	 * @return the inverted index from product tags to product ordinals, built on first use
+	 */
+	public ProductTagIndex getTagIndex() {
+		ProductTagIndex index = tagIndex;
+		if(index == null) {
+			index = new ProductTagIndex(tags);
+			tagIndex = index;
+		}
+		return index;
+	}
+
+	/* Descriptive columns */
+
+	public String getEan(int ordinal) {
+		return descriptions.get(ordinal, Descriptions.EAN);
+	}
+
+	public String getName(int ordinal) {
+		return descriptions.get(ordinal, Descriptions.NAME);
+	}
+
+	public String getBrand(int ordinal) {
+		return descriptions.get(ordinal, Descriptions.BRAND);
+	}
+
+	public String getIngredients(int ordinal) {
+		return descriptions.get(ordinal, Descriptions.INGREDIENTS);
+	}
+
+	public String getDescription(int ordinal) {
+		return descriptions.get(ordinal, Descriptions.DESCRIPTION);
+	}
+
+	/**
+	 * @param ordinal
+	 * @return a new map of the retailer category ids of the product to their levels
+	 */
+	public Map<Long, Integer> getCategories(int ordinal) {
+		Map<Long, Integer> categories = new HashMap<>();
+		for(int position = descriptions.categoryOffsets[ordinal]; position < descriptions.categoryOffsets[ordinal + 1]; position++) {
+			categories.put(descriptions.categoryIds[position], descriptions.categoryLevels[position]);
+		}
+		return categories;
+	}
+
+	/**
+	 * Creates a product object with all the data of a product of the catalog.
+	 * @param ordinal
+	 * @return a new product object
+	 */
+	public Product getProduct(int ordinal) {
+		Product product = new Product(getEan(ordinal), productIds[ordinal], getName(ordinal), getBrand(ordinal), getIngredients(ordinal));
+		product.setDescription(getDescription(ordinal));
+		product.setTags(ProductTagSet.of(Arrays.copyOfRange(tags.ids, tagStart(ordinal), tagEnd(ordinal))));
+		product.setCategories(getCategories(ordinal));
+		return product;
+	}
+
+	/**
+	 * The product tags of products in compressed sparse row layout, by product position.
+	 */
+	static final class TagColumns implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final int[] offsets;
+		final long[] ids;
+
+		TagColumns(int[] offsets, long[] ids) {
+			this.offsets = offsets;
+			this.ids = ids;
+		}
+
+		static TagColumns of(List<Product> products) {
+			int[] offsets = new int[products.size() + 1];
+			for(int position = 0; position < products.size(); position++) {
+				offsets[position + 1] = offsets[position] + products.get(position).getTagSet().size();
+			}
+			long[] ids = new long[offsets[products.size()]];
+			for(int position = 0; position < products.size(); position++) {
+				ProductTagSet productTags = products.get(position).getTagSet();
+				for(int i = 0; i < productTags.size(); i++) {
+					ids[offsets[position] + i] = productTags.get(i);
+				}
+			}
+			return new TagColumns(offsets, ids);
+		}
+
+		int productCount() {
+			return offsets.length - 1;
+		}
+	}
+
+	/**
+	 * The descriptive fields of all products, encoded in one buffer outside of the heap, and the categories.
+	 */
+	private static final class Descriptions implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		static final int EAN = 0, NAME = 1, BRAND = 2, INGREDIENTS = 3, DESCRIPTION = 4, FIELDS = 5;
+
+		/* start of each field of each product in the bytes, -1 for null fields */
+		private final int[] starts;
+		private transient ByteBuffer bytes;
+		private final int[] categoryOffsets;
+		private final long[] categoryIds;
+		private final int[] categoryLevels;
+
+		/**
+		 * @return the descriptions, with the texts in a direct buffer
+		 */
+		static Descriptions direct(List<Product> products) {
+			Descriptions descriptions = new Descriptions(products);
+			DirectOutput out = new DirectOutput();
+			try {
+				descriptions.encode(products, out);
+			} catch(IOException e) {
+				//not thrown by a direct buffer
+				throw new UncheckedIOException(e);
+			}
+			descriptions.bytes = out.toBuffer();
+			return descriptions;
+		}
+
+		/**
+		 * @return the descriptions, with the texts written to a file and mapped from it
+		 */
+		static Descriptions mapped(List<Product> products, Path file) throws IOException {
+			Descriptions descriptions = new Descriptions(products);
+			try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+				descriptions.encode(products, out);
+			}
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				descriptions.bytes = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			}
+			return descriptions;
+		}
+
+		/**
+		 * Copies the categories, the texts are encoded by {@link #encode(List, OutputStream)}.
+		 */
+		private Descriptions(List<Product> products) {
+			this.starts = new int[products.size()*FIELDS + 1];
+			int categoryCount = 0;
+			for(Product product : products) {
+				categoryCount += product.getCategories() == null ? 0 : product.getCategories().size();
+			}
+			this.categoryOffsets = new int[products.size() + 1];
+			this.categoryIds = new long[categoryCount];
+			this.categoryLevels = new int[categoryCount];
+			for(int position = 0; position < products.size(); position++) {
+				int category = categoryOffsets[position];
+				Map<Long, Integer> categories = products.get(position).getCategories();
+				if(categories != null) {
+					for(Map.Entry<Long, Integer> categoryAndLevel : categories.entrySet()) {
+						categoryIds[category] = categoryAndLevel.getKey();
+						categoryLevels[category++] = categoryAndLevel.getValue();
+					}
+				}
+				categoryOffsets[position + 1] = category;
+			}
+		}
+
+		/**
+		 * Writes the texts of the products as UTF-8 and records where each of them starts.
+		 */
+		private void encode(List<Product> products, OutputStream out) throws IOException {
+			int length = 0;
+			for(int position = 0; position < products.size(); position++) {
+				Product product = products.get(position);
+				String[] fields = {product.getEan(), product.getName(), product.getBrand(), product.getIngredients(), product.getDescription()};
+				for(int field = 0; field < FIELDS; field++) {
+					if(fields[field] == null) {
+						starts[position*FIELDS + field] = -1;
+						continue;
+					}
+					starts[position*FIELDS + field] = length;
+					byte[] utf8 = fields[field].getBytes(StandardCharsets.UTF_8);
+					if((long) length + utf8.length > Integer.MAX_VALUE) {
+						throw new IllegalArgumentException("The texts of the catalog exceed " + Integer.MAX_VALUE + " bytes");
+					}
+					out.write(utf8);
+					length += utf8.length;
+				}
+			}
+			starts[products.size()*FIELDS] = length;
+		}
+
+		String get(int position, int field) {
+			int index = position*FIELDS + field;
+			int start = starts[index];
+			if(start < 0) {
+				return null;
+			}
+			//the next non-null field, or the end of the bytes
+			int end = -1;
+			for(int next = index + 1; end < 0; next++) {
+				end = starts[next];
+			}
+			byte[] utf8 = new byte[end - start];
+			//a view per read, so that threads do not share a position
+			ByteBuffer view = bytes.duplicate();
+			((Buffer) view).position(start);
+			view.get(utf8);
+			return new String(utf8, StandardCharsets.UTF_8);
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			out.defaultWriteObject();
+			ByteBuffer view = bytes.duplicate();
+			((Buffer) view).position(0);
+			byte[] chunk = new byte[8192];
+			while(view.hasRemaining()) {
+				int length = Math.min(chunk.length, view.remaining());
+				view.get(chunk, 0, length);
+				out.write(chunk, 0, length);
+			}
+		}
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			bytes = ByteBuffer.allocateDirect(starts[starts.length - 1]);
+			byte[] chunk = new byte[8192];
+			while(bytes.hasRemaining()) {
+				int length = Math.min(chunk.length, bytes.remaining());
+				in.readFully(chunk, 0, length);
+				bytes.put(chunk, 0, length);
+			}
+			((Buffer) bytes).flip();
+		}
+	}
+
+	/**
+	 * Collects written bytes in a direct buffer that grows as needed.
+	 */
+	private static final class DirectOutput extends OutputStream {
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+
+		@Override
+		public void write(int b) {
+			ensureRemaining(1);
+			buffer.put((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			ensureRemaining(len);
+			buffer.put(b, off, len);
+		}
+
+		private void ensureRemaining(int length) {
+			if(buffer.remaining() >= length) {
+				return;
+			}
+			ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() << 1, buffer.position() + length));
+			((Buffer) buffer).flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+
+		/**
+		 * @return the written bytes, from position 0 to the limit
+		 */
+		ByteBuffer toBuffer() {
+			((Buffer) buffer).flip();
+			return buffer;
+		}
+	}
+}
@@ -1,10 +1,12 @@
 package ch.ethz.coss.algorithm.ontology;
 
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.util.concurrent.AtomicDouble;
 
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+
 /**
  * A class that contains information about the total value contributed by a product tag to a product rating.
  * @author Thomas Asikis
@@ -35,10 +37,20 @@ public class ProductTagContribution {
 		this.productTagId = productTagId;
 		this.totalAbsOffset = totalAbsOffset;
 		this.alpha = alpha;
-		this.contributionToPreferences = new ConcurrentHashMap<>();
+		this.contributionToPreferences = new HashMap<>();
 		this.totalContribution = new AtomicDouble();
 	}
 
+	/**
+	 * Constructor, with the rating scale of a scoring configuration as the scaling factor
+	 * @param productTagId the id of the product tag
+	 * @param totalAbsOffset the total absolute offset of the preference
+	 * @param config the scoring configuration of the rating
+	 */
+	public ProductTagContribution(long productTagId, double totalAbsOffset, ScoringConfig config) {
+		this(productTagId, totalAbsOffset, config.getRatingScale());
+	}
+
 	/**
 	 * 
 	 * @param association the association score of the product tag and the preference tags
@@ -53,13 +65,33 @@ public class ProductTagContribution {
 			double aggregateAssociation, 
 			double offset, 
 			double referenceAssociation, 
-			Preference preference, long preferenceTagId, boolean contradiction) {		
+			Preference preference, long preferenceTagId, boolean contradiction) {
+		contributeAssociationWithTagCount(association, aggregateAssociation, offset, referenceAssociation, preference, preference.getTagCount(), contradiction);
+	}
+
+	/**
+	 * Same as {@link #contributeAssociation(double, double, double, double, Preference, long, boolean)}, with the number
+	 * of preference tags known to the caller, so that the tags of the preference are not copied for each association.
+	 * Named apart from that method, since an int count would otherwise silently widen to a preference tag id.
+	 * @param association the association score of the product tag and the preference tags
+	 * @param aggregateAssociation The sum of association scores for the corresponding preference tags.
+	 * @param offset the preference score offset for the user
+	 * @param referenceAssociation the reference association score for normalization, it is min or max association
+	 * @param preference, the preference that is relevant to the tag contribution 
+	 * @param preferenceTagCount the number of tags of the preference
+	 * @param contradiction, whether this tag contradicts a strict preference
+	 */
+	public void contributeAssociationWithTagCount(double association, 
+			double aggregateAssociation, 
+			double offset, 
+			double referenceAssociation, 
+			Preference preference, int preferenceTagCount, boolean contradiction) {		
 		if(association != 0 && offset != 0) {
 			contributionToPreferences.putIfAbsent(preference, new AtomicDouble(0.0));
 			double absSummedCorrelation = Math.abs(aggregateAssociation);
 			double actualCorrelationContribution =  absSummedCorrelation > 1 ? association/absSummedCorrelation : association;
 			actualCorrelationContribution = actualCorrelationContribution/referenceAssociation;
-			actualCorrelationContribution = actualCorrelationContribution/preference.getTags().size();		
+			actualCorrelationContribution = actualCorrelationContribution/preferenceTagCount;		
 			actualCorrelationContribution = Math.signum(aggregateAssociation*offset)*actualCorrelationContribution;
 			actualCorrelationContribution = actualCorrelationContribution*Math.abs(offset)/totalAbsOffset;
 			actualCorrelationContribution = alpha*actualCorrelationContribution;
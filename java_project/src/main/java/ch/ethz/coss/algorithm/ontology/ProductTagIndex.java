@@ -0,0 +1,104 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ch.ethz.coss.algorithm.utilities.LongIntHashMap;
+
+/**
+ * An inverted index from product tag ids to the products that hold them. Products are referred to by their position
+ * in the product list the index was built from. The index is a snapshot of the product tags at construction time.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class ProductTagIndex {
+
+	private final int productCount;
+	private final LongIntHashMap tagSlots;
+	/* positions of the products of each tag slot, in ascending order */
+	private final int[] offsets;
+	private final int[] positions;
+
+	/**
+	 * Builds the index.
+	 * @param products the product list, the position of a product in the list is its position in the index
+	 */
+	public ProductTagIndex(List<Product> products) {
+		this(ProductCatalog.TagColumns.of(products));
+	}
+
+	/**
+	 * Builds the index from tag columns, the position of a product is its row in the columns.
+	 * @param tags the product tags in compressed sparse row layout
+	 */
+	ProductTagIndex(ProductCatalog.TagColumns tags) {
+		this.productCount = tags.productCount();
+		this.tagSlots = new LongIntHashMap();
+		int[] counts = new int[16];
+		for(long tagId : tags.ids) {
+			int slot = tagSlots.get(tagId);
+			if(slot == LongIntHashMap.MISSING) {
+				slot = tagSlots.size();
+				tagSlots.put(tagId, slot);
+				if(slot == counts.length) {
+					counts = Arrays.copyOf(counts, slot << 1);
+				}
+			}
+			counts[slot]++;
+		}
+
+		this.offsets = new int[tagSlots.size() + 1];
+		for(int slot = 0; slot < tagSlots.size(); slot++) {
+			offsets[slot + 1] = offsets[slot] + counts[slot];
+		}
+		this.positions = new int[tags.ids.length];
+		int[] cursor = Arrays.copyOf(offsets, tagSlots.size());
+		for(int position = 0; position < productCount; position++) {
+			for(int index = tags.offsets[position]; index < tags.offsets[position + 1]; index++) {
+				positions[cursor[tagSlots.get(tags.ids[index])]++] = position;
+			}
+		}
+	}
+
+	/**
+	 * @param productTagId
+	 * @return the slot of the tag, to be used with {@link #start(int)} and {@link #end(int)}, or -1 if no product holds the tag
+	 */
+	public int slot(long productTagId) {
+		return tagSlots.get(productTagId);
+	}
+
+	/**
+	 * @param slot
+	 * @return the first index in {@link #positionAt(int)} of the products of the tag slot
+	 */
+	public int start(int slot) {
+		return offsets[slot];
+	}
+
+	/**
+	 * @param slot
+	 * @return the index after the last index of the products of the tag slot
+	 */
+	public int end(int slot) {
+		return offsets[slot + 1];
+	}
+
+	/**
+	 * @param index
+	 * @return the position of the product in the product list
+	 */
+	public int positionAt(int index) {
+		return positions[index];
+	}
+
+	/**
+	 * @return the number of products in the index
+	 */
+	public int getProductCount() {
+		return productCount;
+	}
+}
@@ -0,0 +1,262 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of product tag ids, stored as a sorted array of primitive longs. Membership is a binary search
+ * without boxing, and intersection and union of two sets are linear merges. A set takes 8 bytes per tag, instead of
+ * the boxed key and hash entry of a {@link java.util.HashSet}. The set iterates in ascending tag id.
+ * <p>
+ * Every set carries a 64 bit signature of its tags, so that unequal sets are told apart without comparing them.
+ * Products with equal tags can share one instance through a {@link ProductTagSetInterner}.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public final class ProductTagSet extends AbstractSet<Long> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final ProductTagSet EMPTY = new ProductTagSet(new long[0]);
+
+	private final long[] tagIds;
+	private final long signature;
+	private final int hashCode;
+
+	private ProductTagSet(long[] sortedDistinctTagIds) {
+		this.tagIds = sortedDistinctTagIds;
+		long signature = 0x9E3779B97F4A7C15L ^ sortedDistinctTagIds.length;
+		//consistent with the hash code of any other set of the same ids
+		int hashCode = 0;
+		for(long tagId : sortedDistinctTagIds) {
+			signature = (signature ^ tagId) * 0xBF58476D1CE4E5B9L;
+			signature ^= signature >>> 31;
+			hashCode += Long.hashCode(tagId);
+		}
+		this.signature = signature;
+		this.hashCode = hashCode;
+	}
+
+	/**
+	 * @param tagIds the product tag ids, in any order and with duplicates
+	 * @return the set of the tag ids
+	 */
+	public static ProductTagSet of(long... tagIds) {
+		long[] sorted = tagIds.clone();
+		Arrays.sort(sorted);
+		return new ProductTagSet(distinct(sorted));
+	}
+
+	/**
+	 * @param tagIds the product tag ids
+	 * @return the set of the tag ids
+	 */
+	public static ProductTagSet of(Collection<Long> tagIds) {
+		if(tagIds instanceof ProductTagSet) {
+			return (ProductTagSet) tagIds;
+		}
+		long[] sorted = new long[tagIds.size()];
+		int count = 0;
+		for(Long tagId : tagIds) {
+			sorted[count++] = tagId;
+		}
+		Arrays.sort(sorted);
+		return new ProductTagSet(distinct(sorted));
+	}
+
+	private static long[] distinct(long[] sorted) {
+		int count = 0;
+		for(int i = 0; i < sorted.length; i++) {
+			if(count == 0 || sorted[count - 1] != sorted[i]) {
+				sorted[count++] = sorted[i];
+			}
+		}
+		return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+	}
+
+	/**
+	 * @param tagId a product tag id
+	 * @return whether the tag is in the set
+	 */
+	public boolean contains(long tagId) {
+		return Arrays.binarySearch(tagIds, tagId) >= 0;
+	}
+
+	@Override
+	public boolean contains(Object tagId) {
+		return tagId instanceof Long && contains(((Long) tagId).longValue());
+	}
+
+	/**
+	 * @param index a position between 0 and the size of the set
+	 * @return the tag id at the position, in ascending order
+	 */
+	public long get(int index) {
+		return tagIds[index];
+	}
+
+	@Override
+	public int size() {
+		return tagIds.length;
+	}
+
+	/**
+	 * @return a hash of the tag ids, equal for equal sets
+	 */
+	public long signature() {
+		return signature;
+	}
+
+	/**
+	 * @param tagId a product tag id
+	 * @return a set that also contains the tag, or this set if it already does
+	 */
+	public ProductTagSet with(long tagId) {
+		int position = Arrays.binarySearch(tagIds, tagId);
+		if(position >= 0) {
+			return this;
+		}
+		position = -position - 1;
+		long[] added = new long[tagIds.length + 1];
+		System.arraycopy(tagIds, 0, added, 0, position);
+		added[position] = tagId;
+		System.arraycopy(tagIds, position, added, position + 1, tagIds.length - position);
+		return new ProductTagSet(added);
+	}
+
+	/**
+	 * @param other a set of product tag ids
+	 * @return the tags in any of the sets
+	 */
+	public ProductTagSet union(ProductTagSet other) {
+		if(other.tagIds.length == 0) {
+			return this;
+		} else if(tagIds.length == 0) {
+			return other;
+		}
+		long[] merged = new long[tagIds.length + other.tagIds.length];
+		int i = 0, j = 0, count = 0;
+		while(i < tagIds.length && j < other.tagIds.length) {
+			long left = tagIds[i], right = other.tagIds[j];
+			if(left <= right) {
+				i++;
+				j += left == right ? 1 : 0;
+				merged[count++] = left;
+			} else {
+				j++;
+				merged[count++] = right;
+			}
+		}
+		while(i < tagIds.length) {
+			merged[count++] = tagIds[i++];
+		}
+		while(j < other.tagIds.length) {
+			merged[count++] = other.tagIds[j++];
+		}
+		return count == tagIds.length ? this : new ProductTagSet(Arrays.copyOf(merged, count));
+	}
+
+	/**
+	 * @param other a set of product tag ids, e.g. the product tags associated with a preference tag
+	 * @return the tags in both sets
+	 */
+	public ProductTagSet intersect(ProductTagSet other) {
+		long[] common = new long[Math.min(tagIds.length, other.tagIds.length)];
+		int i = 0, j = 0, count = 0;
+		while(i < tagIds.length && j < other.tagIds.length) {
+			long left = tagIds[i], right = other.tagIds[j];
+			if(left == right) {
+				common[count++] = left;
+				i++;
+				j++;
+			} else if(left < right) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return count == 0 ? EMPTY : new ProductTagSet(count == common.length ? common : Arrays.copyOf(common, count));
+	}
+
+	/**
+	 * Keeps the associations that are mapped to a tag of the set, in their original order. Associations in ascending
+	 * order of their product tag ids, as the rows of {@link CompiledAssociations}, are matched with
+	 * {@link #intersect(ProductTagSet)} in a single pass. Other associations are matched by a binary search each,
+	 * which is cheaper than sorting them first.
+	 * @param associations the associations, e.g. of a preference tag
+	 * @return the associations with a product tag in the set
+	 */
+	public List<Association> filter(List<Association> associations) {
+		List<Association> filtered = new ArrayList<>();
+		if(tagIds.length == 0 || associations.isEmpty()) {
+			return filtered;
+		}
+		long[] associated = new long[associations.size()];
+		boolean ascending = true;
+		for(int i = 0; i < associated.length; i++) {
+			associated[i] = associations.get(i).getProductTagId();
+			ascending &= i == 0 || associated[i - 1] < associated[i];
+		}
+		if(!ascending) {
+			for(int i = 0; i < associated.length; i++) {
+				if(contains(associated[i])) {
+					filtered.add(associations.get(i));
+				}
+			}
+			return filtered;
+		}
+		ProductTagSet common = intersect(new ProductTagSet(associated));
+		for(int i = 0, j = 0; i < associated.length && j < common.tagIds.length; i++) {
+			if(associated[i] == common.tagIds[j]) {
+				filtered.add(associations.get(i));
+				j++;
+			}
+		}
+		return filtered;
+	}
+
+	@Override
+	public Iterator<Long> iterator() {
+		return new Iterator<Long>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < tagIds.length;
+			}
+
+			@Override
+			public Long next() {
+				if(next == tagIds.length) {
+					throw new NoSuchElementException();
+				}
+				return tagIds[next++];
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(other == this) {
+			return true;
+		} else if(other instanceof ProductTagSet) {
+			ProductTagSet set = (ProductTagSet) other;
+			return signature == set.signature && Arrays.equals(tagIds, set.tagIds);
+		}
+		return super.equals(other);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+}
@@ -0,0 +1,79 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A pool of product tag sets, that lets products with equal tags share a single {@link ProductTagSet} instance. Many
+ * products of a catalog are the same item in different sizes or packages, and their ratings only depend on their tags.
+ * Interning the products while loading the catalog keeps one tag set per distinct set of tags. The pool is keyed by
+ * the signature of the sets.
+ * <p>
+ * The pool is thread safe. It holds every interned set until it is discarded.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class ProductTagSetInterner {
+
+	private final ConcurrentMap<Signature, ProductTagSet> sets = new ConcurrentHashMap<>();
+
+	/**
+	 * @param tags a product tag set
+	 * @return the pooled set equal to the given one, which is pooled if it is the first of its tags
+	 */
+	public ProductTagSet intern(ProductTagSet tags) {
+		ProductTagSet pooled = sets.putIfAbsent(new Signature(tags), tags);
+		return pooled == null ? tags : pooled;
+	}
+
+	/**
+	 * Replaces the tag set of a product with the pooled set of the same tags. The tags of the product do not change.
+	 * @param product the product object
+	 * @return the product
+	 */
+	public Product intern(Product product) {
+		product.shareTags(intern(product.getTagSet()));
+		return product;
+	}
+
+	/**
+	 * @param products the products to intern
+	 */
+	public void internAll(Collection<Product> products) {
+		for(Product product : products) {
+			intern(product);
+		}
+	}
+
+	/**
+	 * @return the number of distinct tag sets in the pool
+	 */
+	public int size() {
+		return sets.size();
+	}
+
+	/**
+	 * A tag set hashed by its full signature instead of the set hash code.
+	 */
+	private static final class Signature {
+		private final ProductTagSet tags;
+
+		Signature(ProductTagSet tags) {
+			this.tags = tags;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(tags.signature());
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Signature && tags.equals(((Signature) other).tags);
+		}
+	}
+}
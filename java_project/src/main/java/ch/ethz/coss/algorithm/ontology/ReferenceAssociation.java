@@ -0,0 +1,86 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * A class that holds the sums of the positive and of the negative association values of a preference tag.
+ * These are the reference associations of equations 17-19 in the Appendix, before clipping. They depend
+ * only on the ontology, never on the user or the product.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class ReferenceAssociation implements Serializable{
+
+	private static final long serialVersionUID = 1L;
+	private final double positiveSum;
+	private final double negativeSum;
+
+	/**
+	 * Constructor
+	 * @param positiveSum the sum of the positive association values of the preference tag
+	 * @param negativeSum the sum of the zero or negative association values of the preference tag
+	 */
+	public ReferenceAssociation(double positiveSum, double negativeSum) {
+		this.positiveSum = positiveSum;
+		this.negativeSum = negativeSum;
+	}
+
+	/**
+	 * Sums the association values of a preference tag, in the iteration order of the given associations.
+	 * @param preferenceTagAssociations all the associations of the preference tag
+	 * @return the reference association
+	 */
+	public static ReferenceAssociation of(Collection<Association> preferenceTagAssociations) {
+		double maxAssociation = 0.0;
+		double minAssociation = 0.0;
+		for(Association association : preferenceTagAssociations) {
+			double associationValue = association.getAssociationValue();
+			if (associationValue > 0) {
+				maxAssociation += associationValue;
+			} else {
+				minAssociation += associationValue;
+			}
+		}
+		return new ReferenceAssociation(maxAssociation, minAssociation);
+	}
+
+	/**
+	 * Sums the association values of a preference tag directly from the storage, in the order of
+	 * {@link AssociationStore#findByPreferenceTag(long)}, without creating association objects.
+	 * @param store the association storage
+	 * @param preferenceTagId the preference tag id
+	 * @return the reference association
+	 */
+	static ReferenceAssociation of(AssociationStore store, long preferenceTagId) {
+		Sums sums = new Sums();
+		store.forEachOfPreferenceTag(preferenceTagId, sums);
+		return new ReferenceAssociation(sums.maxAssociation, sums.minAssociation);
+	}
+
+	private static final class Sums implements AssociationMap.AssociationConsumer {
+		private double maxAssociation;
+		private double minAssociation;
+
+		@Override
+		public void accept(long preferenceTagId, long productTagId, double associationValue) {
+			if (associationValue > 0) {
+				maxAssociation += associationValue;
+			} else {
+				minAssociation += associationValue;
+			}
+		}
+	}
+
+	/*Getters*/
+	public double getPositiveSum() {
+		return positiveSum;
+	}
+
+	public double getNegativeSum() {
+		return negativeSum;
+	}
+}
@@ -1,6 +1,10 @@
 package ch.ethz.coss.algorithm.ontology;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -8,7 +12,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import ch.ethz.coss.algorithm.utilities.Pair;
-import ch.ethz.coss.algorithm.utilities.Scores;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
 
 /**
  * A class that contains information about users, e.g their preference scores.
@@ -29,17 +33,37 @@ public class User implements Serializable{
 	Map<Preference, Double> offsets;
 	Map<Preference, Double> absoluteOffsets;
 	Map<Long, Double> history;
+	ScoringConfig config;
+	/* read only views for the scoring path, refreshed whenever a preference is added */
+	transient List<Preference> preferenceList;
+	transient double[] scores;
+	transient double[] offsetVector;
+	transient double totalAbsoluteOffset;
+	/* a new stamp of the VersionSequence whenever the preferences change, written after the change and volatile so
+	 * that a thread reading the new stamp also sees the new preferences */
+	transient volatile long preferenceVersion;
 
 	/**
-	 * create a new user with a unique uid
+	 * create a new user with a unique uid, with the offsets calculated by the current {@link ch.ethz.coss.algorithm.utilities.Scores}
 	 * @param uid
 	 */
 	public User(String uid) {
+		this(uid, ScoringConfig.fromScores());
+	}
+
+	/**
+	 * create a new user with a unique uid
+	 * @param uid
+	 * @param config the scoring configuration, that defines the mean user preference of the offsets
+	 */
+	public User(String uid, ScoringConfig config) {
 		this.uid = uid;
+		this.config = config;
 		this.preferences = new LinkedHashMap<>();
 		this.offsets = new LinkedHashMap<>();
 		this.absoluteOffsets = new LinkedHashMap<>();
 		this.history = new HashMap<>();
+		refreshScoringViews();
 	}
 
 	/**
@@ -49,8 +73,13 @@ public class User implements Serializable{
 	 * @param score
 	 */
 	public void addPreference(Preference preference, double score) {
+		putPreference(preference, score);
+		refreshScoringViews();
+	}
+
+	private void putPreference(Preference preference, double score) {
 		preferences.put(preference, score);
-		double offset =  score-Scores.meanUserPreference;
+		double offset =  score-config.getMeanUserPreference();
 		offsets.put(preference, offset);
 		double absOffset = Math.abs(offset);
 		absoluteOffsets.put(preference, absOffset);
@@ -74,8 +103,31 @@ public class User implements Serializable{
 	 */
 	public void addPreferences(List<Pair<Preference, Double>> preferences) {
 		for(Pair<Preference, Double> preferenceAndScore : preferences){
-			addPreference(preferenceAndScore.getFirst(), preferenceAndScore.getSecond());
+			putPreference(preferenceAndScore.getFirst(), preferenceAndScore.getSecond());
 		}
+		refreshScoringViews();
+	}
+
+	/**
+	 * Rebuilds the preference and offset vectors, in the iteration order of the preferences, and the total absolute
+	 * offset, summed in the same order as {@link #getTotalAbsoluteOffset(ScoringConfig)}.
+	 */
+	private void refreshScoringViews() {
+		Preference[] preferenceArray = new Preference[preferences.size()];
+		scores = new double[preferences.size()];
+		offsetVector = new double[preferences.size()];
+		double sum = 0.0;
+		int i = 0;
+		for(Entry<Preference, Double> preferenceAndScore : preferences.entrySet()) {
+			preferenceArray[i] = preferenceAndScore.getKey();
+			scores[i] = preferenceAndScore.getValue();
+			offsetVector[i] = scores[i] - config.getMeanUserPreference();
+			sum+=Math.abs(offsetVector[i]);
+			i++;
+		}
+		preferenceList = Collections.unmodifiableList(Arrays.asList(preferenceArray));
+		totalAbsoluteOffset = sum;
+		preferenceVersion = VersionSequence.next();
 	}
 
 	public String getUid() {
@@ -83,7 +135,8 @@ public class User implements Serializable{
 	}
 
 	/**
-	 * get all user preferences and theis respective scores
+	 * get all user preferences and theis respective scores. Preferences should only be added via
+	 * {@link #addPreference(Preference, double)} so that the scoring views are kept up to date.
 	 * @return
 	 */
 	public Map<Preference, Double> getPreferences() {
@@ -100,16 +153,78 @@ public class User implements Serializable{
 		return absoluteOffsets;
 	}
 
+	/**
+	 * @return the total absolute offset from the mean user preference of the user configuration, precomputed when the preferences change
+	 */
 	public Double getTotalAbsoluteOffset() {
+		return totalAbsoluteOffset;
+	}
+
+	/**
+	 * The preferences of the user without copying, for the scoring path. Positions match {@link #getScore(int)}
+	 * and {@link #getOffset(int)}.
+	 * @return a read only list of the preferences, in their iteration order
+	 */
+	public List<Preference> getPreferenceList() {
+		return preferenceList;
+	}
+
+	/**
+	 * @param index the position of a preference in {@link #getPreferenceList()}
+	 * @return the score of the preference
+	 */
+	public double getScore(int index) {
+		return scores[index];
+	}
+
+	/**
+	 * @param index the position of a preference in {@link #getPreferenceList()}
+	 * @return the offset of the preference score from the mean user preference of the user configuration
+	 */
+	public double getOffset(int index) {
+		return offsetVector[index];
+	}
+
+	/**
+	 * The total absolute offset of the preference scores from the mean user preference of a configuration,
+	 * summed in the same order as {@link #getTotalAbsoluteOffset()}.
+	 * @param config the scoring configuration of the rating
+	 * @return the total absolute offset
+	 */
+	public double getTotalAbsoluteOffset(ScoringConfig config) {
+		if(config.getMeanUserPreference() == this.config.getMeanUserPreference()) {
+			return totalAbsoluteOffset;
+		}
 		double sum = 0.0;
-		for(Entry<Preference, Double> e : this.offsets.entrySet()) {
-			sum+=Math.abs(e.getValue());
-			//System.err.println(e.getValue());
+		for(Double score : this.preferences.values()) {
+			sum+=Math.abs(score - config.getMeanUserPreference());
 		}
-		//System.err.println(sum);
 		return sum;
 	}
 
+	public ScoringConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return a stamp that changes whenever a preference is added or its score is replaced. Stamps are unique across
+	 *         users, so two users with the same uid never share one
+	 */
+	public long getPreferenceVersion() {
+		return preferenceVersion;
+	}
+
+	/**
+	 * Users serialized before the scoring configuration was introduced get the current {@link ch.ethz.coss.algorithm.utilities.Scores}.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if(config == null) {
+			config = ScoringConfig.fromScores();
+		}
+		refreshScoringViews();
+	}
+
 	/**
 	 * String representation of a preference and the correspofing user score on that preference
 	 * @return
@@ -118,7 +233,7 @@ public class User implements Serializable{
 		StringBuilder strb = new StringBuilder("User: " + uid).append("\n");
 		
 		for(Map.Entry<Preference, Double> preferenceAndScore : preferences.entrySet()){
-			String description = preferenceAndScore.getValue() > Scores.meanUserPreference ? "pro" : preferenceAndScore.getValue() < Scores.meanUserPreference ? "against" : "neutral";
+			String description = preferenceAndScore.getValue() > config.getMeanUserPreference() ? "pro" : preferenceAndScore.getValue() < config.getMeanUserPreference() ? "against" : "neutral";
 			strb.append(preferenceAndScore.getKey().getName() + "\t::\t" + preferenceAndScore.getValue() +"\t" + description).append("\n");
 		} 
 			
@@ -0,0 +1,28 @@
+package ch.ethz.coss.algorithm.ontology;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The source of the version stamps of users, preferences, products and association maps. The stamps are drawn from
+ * a single sequence, so a stamp is never repeated by another object, by another instance with the same id or by a
+ * deserialized copy, and a later stamp is always larger than an earlier one.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+final class VersionSequence {
+
+	private static final AtomicLong LAST = new AtomicLong();
+
+	private VersionSequence() {
+	}
+
+	/**
+	 * @return a stamp larger than all the stamps returned before
+	 */
+	static long next() {
+		return LAST.incrementAndGet();
+	}
+}
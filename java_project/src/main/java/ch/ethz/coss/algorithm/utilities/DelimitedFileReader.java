@@ -0,0 +1,380 @@
+package ch.ethz.coss.algorithm.utilities;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/**
+ * A streaming reader of delimited UTF-8 text files, e.g. tab separated ontology dumps. The file is read through a
+ * {@link FileChannel} into a fixed buffer and every line is handed to a {@link RowHandler} as a {@link Row}, a reused
+ * view of the line bytes. Fields are located by scanning for the delimiter, without regular expressions, and numbers are
+ * parsed from the bytes, so that no strings or arrays are allocated per line unless {@link Row#getString(int)} is called.
+ * Memory is bounded by the buffer size, and not by the size of the file as with {@link FileHelper#realLinesSplit}.
+ * <p>
+ * Large files can also be read in parallel chunks over a {@link ForkJoinPool}. Each chunk is a range of bytes that
+ * starts and ends at line boundaries, its lines are handled in file order, but the chunks run concurrently.
+ * Empty lines are skipped. A line may end with {@code \n} or {@code \r\n}.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class DelimitedFileReader {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Receives the lines of a file.
+	 */
+	@FunctionalInterface
+	public interface RowHandler {
+		/**
+		 * @param row the fields of a line, only valid during the call
+		 */
+		void accept(Row row);
+	}
+
+	private final byte delimiter;
+	private final int bufferSize;
+
+	/**
+	 * Constructor, with the default buffer size.
+	 * @param delimiter the ASCII field delimiter, e.g. a tab
+	 */
+	public DelimitedFileReader(char delimiter) {
+		this(delimiter, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * @param delimiter the ASCII field delimiter, e.g. a tab
+	 * @param bufferSize the initial buffer size in bytes, grown for lines that do not fit
+	 */
+	public DelimitedFileReader(char delimiter, int bufferSize) {
+		if(delimiter > 0x7F) {
+			throw new IllegalArgumentException("delimiter must be ASCII: " + delimiter);
+		}
+		if(bufferSize < 1) {
+			throw new IllegalArgumentException("buffer size must be positive: " + bufferSize);
+		}
+		this.delimiter = (byte) delimiter;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Reads all the lines of a file, in file order.
+	 * @param path the file
+	 * @param handler receives every non empty line
+	 * @throws IOException
+	 */
+	public void read(Path path, RowHandler handler) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			read(channel, 0, channel.size(), handler);
+		}
+	}
+
+	/**
+	 * Reads all the lines of a file in parallel chunks. The lines of a chunk are handled in file order, the chunks
+	 * concurrently, so the handler needs to be thread safe.
+	 * @param path the file
+	 * @param handler receives every non empty line
+	 * @param pool the pool that reads the chunks
+	 * @param chunks the number of chunks, e.g. the parallelism of the pool
+	 * @throws IOException
+	 */
+	public void read(Path path, RowHandler handler, ForkJoinPool pool, int chunks) throws IOException {
+		readChunks(path, chunk -> handler, pool, chunks);
+	}
+
+	/**
+	 * Reads all the lines of a file in parallel chunks, with a handler per chunk. The lines of a chunk are handled in
+	 * file order, and a chunk holds the lines after the ones of all the chunks with a lower index. Collecting the
+	 * results per chunk and merging them by index thus gives the file order, whatever the scheduling of the chunks.
+	 * @param path the file
+	 * @param handlers creates the handler of a chunk from the index of the chunk, called once per chunk
+	 * @param pool the pool that reads the chunks
+	 * @param chunks the number of chunks, e.g. the parallelism of the pool
+	 * @throws IOException
+	 */
+	public void readChunks(Path path, IntFunction<RowHandler> handlers, ForkJoinPool pool, int chunks) throws IOException {
+		if(chunks < 1) {
+			throw new IllegalArgumentException("chunks must be positive: " + chunks);
+		}
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long[] starts = new long[chunks + 1];
+			for(int chunk = 0; chunk <= chunks; chunk++) {
+				starts[chunk] = size*chunk/chunks;
+			}
+			pool.invoke(new ChunkTask(channel, starts, 0, chunks, handlers));
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Handles the lines that start between two positions of the file. A line that starts before the range is left to
+	 * the previous range, and the last line may end after the range.
+	 */
+	private void read(FileChannel channel, long start, long end, RowHandler handler) throws IOException {
+		byte[] bytes = new byte[bufferSize];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		Row row = new Row();
+		//reading from the byte before the range tells whether the range starts with a line
+		long readPosition = start == 0 ? 0 : start - 1;
+		long bufferPosition = readPosition;
+		boolean skipping = start > 0;
+		int length = 0;
+		int lineStart = 0;
+		int scanned = 0;
+		while(true) {
+			if(length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length << 1);
+				buffer = ByteBuffer.wrap(bytes);
+			}
+			//through Buffer, the covariant ByteBuffer overloads do not exist on Java 8
+			((Buffer) buffer).limit(bytes.length).position(length);
+			int read = channel.read(buffer, readPosition);
+			if(read < 0) {
+				if(!skipping && lineStart < length && bufferPosition + lineStart < end) {
+					handle(row, bytes, lineStart, length, handler);
+				}
+				return;
+			}
+			readPosition += read;
+			length += read;
+
+			for(; scanned < length; scanned++) {
+				if(bytes[scanned] != '\n') {
+					continue;
+				}
+				if(bufferPosition + lineStart >= end) {
+					return;
+				}
+				if(skipping) {
+					skipping = false;
+				} else {
+					handle(row, bytes, lineStart, scanned, handler);
+				}
+				lineStart = scanned + 1;
+			}
+			if(bufferPosition + lineStart >= end) {
+				return;
+			}
+			if(skipping) {
+				//the line belongs to the previous range
+				lineStart = length;
+			}
+			//keep the incomplete line at the start of the buffer
+			System.arraycopy(bytes, lineStart, bytes, 0, length - lineStart);
+			bufferPosition += lineStart;
+			length -= lineStart;
+			scanned -= lineStart;
+			lineStart = 0;
+		}
+	}
+
+	private void handle(Row row, byte[] bytes, int start, int end, RowHandler handler) {
+		if(end > start && bytes[end - 1] == '\r') {
+			end--;
+		}
+		if(end > start) {
+			row.set(bytes, start, end, delimiter);
+			handler.accept(row);
+		}
+	}
+
+	/**
+	 * Reads the chunks between two chunk indices, splitting in halves down to single chunks.
+	 */
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long[] starts;
+		private final int from;
+		private final int to;
+		private final IntFunction<RowHandler> handlers;
+
+		ChunkTask(FileChannel channel, long[] starts, int from, int to, IntFunction<RowHandler> handlers) {
+			this.channel = channel;
+			this.starts = starts;
+			this.from = from;
+			this.to = to;
+			this.handlers = handlers;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from == 1) {
+				try {
+					read(channel, starts[from], starts[to], handlers.apply(from));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new ChunkTask(channel, starts, from, middle, handlers), new ChunkTask(channel, starts, middle, to, handlers));
+		}
+	}
+
+	/**
+	 * The fields of a line, or of a field that is split again by {@link #split(int, char)}. A row is a view of the
+	 * read buffer and is reused for the next line.
+	 */
+	public static final class Row {
+		private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+				1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+		private byte[] bytes;
+		private int[] fieldStarts = new int[8];
+		private int[] fieldEnds = new int[8];
+		private int size;
+		private Row child;
+
+		private Row() {
+		}
+
+		private void set(byte[] bytes, int start, int end, byte delimiter) {
+			this.bytes = bytes;
+			this.size = 0;
+			if(start == end) {
+				return;
+			}
+			int fieldStart = start;
+			for(int i = start; i <= end; i++) {
+				if(i == end || bytes[i] == delimiter) {
+					if(size == fieldStarts.length) {
+						fieldStarts = Arrays.copyOf(fieldStarts, size << 1);
+						fieldEnds = Arrays.copyOf(fieldEnds, size << 1);
+					}
+					fieldStarts[size] = fieldStart;
+					fieldEnds[size++] = i;
+					fieldStart = i + 1;
+				}
+			}
+		}
+
+		/**
+		 * @return the number of fields, 0 for an empty field that was split
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @param field the index of a field
+		 * @return whether the field has no characters
+		 */
+		public boolean isEmpty(int field) {
+			return fieldStarts[check(field)] == fieldEnds[field];
+		}
+
+		/**
+		 * @param field the index of a field
+		 * @return the field decoded as UTF-8
+		 */
+		public String getString(int field) {
+			return new String(bytes, fieldStarts[check(field)], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @param field the index of a field
+		 * @return the field parsed as a decimal long
+		 * @throws NumberFormatException if the field is not an integer
+		 */
+		public long getLong(int field) {
+			int start = fieldStarts[check(field)], end = fieldEnds[field];
+			boolean negative = start < end && bytes[start] == '-';
+			int i = negative || (start < end && bytes[start] == '+') ? start + 1 : start;
+			if(i == end || end - i > 18) {
+				//empty, or possibly beyond the range of long
+				return Long.parseLong(getString(field));
+			}
+			long value = 0;
+			for(; i < end; i++) {
+				int digit = bytes[i] - '0';
+				if(digit < 0 || digit > 9) {
+					throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+				}
+				value = value*10 + digit;
+			}
+			return negative ? -value : value;
+		}
+
+		/**
+		 * Parses plain decimals with up to 15 significant digits directly, which is exact, and leaves any other notation
+		 * to {@link Double#parseDouble(String)}.
+		 * @param field the index of a field
+		 * @return the field parsed as a double
+		 * @throws NumberFormatException if the field is not a number
+		 */
+		public double getDouble(int field) {
+			int start = fieldStarts[check(field)], end = fieldEnds[field];
+			boolean negative = start < end && bytes[start] == '-';
+			int i = negative || (start < end && bytes[start] == '+') ? start + 1 : start;
+			long mantissa = 0;
+			boolean anyDigit = false;
+			int digits = 0;
+			int decimals = 0;
+			boolean point = false;
+			boolean plain = i < end;
+			for(; i < end && plain; i++) {
+				byte character = bytes[i];
+				if(character >= '0' && character <= '9') {
+					mantissa = mantissa*10 + (character - '0');
+					anyDigit = true;
+					digits += mantissa == 0 ? 0 : 1;
+					decimals += point ? 1 : 0;
+				} else if(character == '.' && !point) {
+					point = true;
+				} else {
+					plain = false;
+				}
+			}
+			if(!plain || !anyDigit || digits > 15 || decimals >= POWERS_OF_TEN.length) {
+				return Double.parseDouble(getString(field));
+			}
+			//both operands are exact, so the division is correctly rounded
+			double value = mantissa/POWERS_OF_TEN[decimals];
+			return negative ? -value : value;
+		}
+
+		/**
+		 * Splits a field again, e.g. a comma separated list of ids. The returned row is reused by the next call.
+		 * @param field the index of a field
+		 * @param separator the ASCII separator of the field
+		 * @return the parts of the field, no parts for an empty field
+		 */
+		public Row split(int field, char separator) {
+			if(child == null) {
+				child = new Row();
+			}
+			child.set(bytes, fieldStarts[check(field)], fieldEnds[field], (byte) separator);
+			return child;
+		}
+
+		private int check(int field) {
+			if(field < 0 || field >= size) {
+				throw new IndexOutOfBoundsException("field " + field + " of " + size);
+			}
+			return field;
+		}
+
+		@Override
+		public String toString() {
+			return size == 0 ? "" : new String(bytes, fieldStarts[0], fieldEnds[size - 1] - fieldStarts[0], StandardCharsets.UTF_8);
+		}
+	}
+}
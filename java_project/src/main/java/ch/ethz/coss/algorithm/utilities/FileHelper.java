@@ -1,5 +1,6 @@
 package ch.ethz.coss.algorithm.utilities;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -22,7 +23,9 @@ public class FileHelper {
 	 * @param cs
 	 * @return
 	 * @throws IOException
+	 * @deprecated keeps the whole file in memory, use a {@link DelimitedFileReader} to stream large files
 	 */
+	@Deprecated
 	public static List<String> realLines(Path path, Charset cs) throws IOException{
 		return Files.readAllLines(path, cs);
 	}
@@ -34,14 +37,17 @@ public class FileHelper {
 	 * @param delimeter
 	 * @return
 	 * @throws IOException
+	 * @deprecated keeps the whole file in memory, use a {@link DelimitedFileReader} to stream large files
 	 */
+	@Deprecated
 	public static List<String[]> realLinesSplit(Path path, Charset cs, String delimeter) throws IOException{
 		List<String[]> delimeted = new ArrayList<>();
-		List<String> lines = realLines(path, cs);
-		
-		for(String line : lines){
-			delimeted.add(line.split(delimeter, -1));
-		}		
+		try(BufferedReader reader = Files.newBufferedReader(path, cs)) {
+			String line;
+			while((line = reader.readLine()) != null){
+				delimeted.add(line.split(delimeter, -1));
+			}
+		}
 		return delimeted;		
 	}
 }
@@ -0,0 +1,133 @@
+package ch.ethz.coss.algorithm.utilities;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A primitive hash map from long keys to non-negative int values, e.g. ids to indices or ordinals.
+ * Uses open addressing with linear probing, so neither keys nor values are boxed. Not thread safe.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+ */
+public class LongIntHashMap implements Serializable{
+
+	private static final long serialVersionUID = 1L;
+	/**
+	 * The value returned for keys that are not in the map.
+	 */
+	public static final int MISSING = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+
+	/**
+	 * Creates an empty map with room for the expected number of keys before resizing.
+	 * @param expectedSize the expected number of keys
+	 */
+	public LongIntHashMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	public LongIntHashMap() {
+		this(8);
+	}
+
+	/**
+	 * Gets the value of a key.
+	 * @param key
+	 * @return the value, or {@link #MISSING} if the key is not in the map
+	 */
+	public int get(long key) {
+		int slot = mix(key) & mask;
+		while (values[slot] != MISSING) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return MISSING;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != MISSING;
+	}
+
+	/**
+	 * Adds or replaces the value of a key.
+	 * @param key
+	 * @param value a non-negative value
+	 * @return the previous value, or {@link #MISSING} if the key was not in the map
+	 */
+	public int put(long key, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Only non-negative values can be stored, got: " + value);
+		}
+		int slot = mix(key) & mask;
+		while (values[slot] != MISSING) {
+			if (keys[slot] == key) {
+				int previous = values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size * 2 > keys.length) {
+			resize(keys.length << 1);
+		}
+		return MISSING;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		Arrays.fill(values, MISSING);
+		this.mask = capacity - 1;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != MISSING) {
+				int slot = mix(oldKeys[i]) & mask;
+				while (values[slot] != MISSING) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Spreads the bits of the key, so that sequential or packed ids do not cluster in the table.
+	 * @param key
+	 * @return the mixed hash
+	 */
+	static int mix(long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+}
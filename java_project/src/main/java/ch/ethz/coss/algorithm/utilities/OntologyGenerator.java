@@ -0,0 +1,528 @@
+package ch.ethz.coss.algorithm.utilities;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import ch.ethz.coss.algorithm.ontology.Association;
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.AssociationMap.Storage;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.PreferenceTag;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.ProductTag;
+import ch.ethz.coss.algorithm.ontology.ProductTagSet;
+import ch.ethz.coss.algorithm.ontology.User;
+
+/**
+ * A seeded generator of synthetic ontologies, catalogs and user populations for scale testing. Each kind of entity is
+ * drawn from its own random stream derived from the seed, so the same seed and sizes always give the same data,
+ * whether it is generated in memory or written to files, and regardless of which entities are generated first.
+ * <p>
+ * Tag ids, preference ids and product ids are consecutive and start from 1, user ids are {@code u1, u2, ...}.
+ * The popularity of product tags follows a Zipf distribution with exponent {@link #getSkew()}, both for the
+ * associations and the products, so that a few product tags are very common and most are rare. The number of tags
+ * of a product is 1 plus a Poisson variable, and the user answers are normally distributed around the mean user
+ * preference.
+ * <p>
+ * Associations can be streamed to a {@link Consumer}, so that tens of millions of them can be written without keeping
+ * them in memory. The files written by {@link #write(Path)} are tab separated, without header:
+ * <ul>
+ * <li>{@code preference_tags.tsv}: id, name</li>
+ * <li>{@code product_tags.tsv}: id, name</li>
+ * <li>{@code preferences.tsv}: id, name, comma separated preference tag ids</li>
+ * <li>{@code products.tsv}: id, ean, comma separated product tag ids</li>
+ * <li>{@code associations.tsv}: preference tag id, product tag id, association value</li>
+ * <li>{@code users.tsv}: uid, comma separated preference id:score pairs</li>
+ * </ul>
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class OntologyGenerator {
+
+	public static final String PREFERENCE_TAGS_FILE = "preference_tags.tsv";
+	public static final String PRODUCT_TAGS_FILE = "product_tags.tsv";
+	public static final String PREFERENCES_FILE = "preferences.tsv";
+	public static final String PRODUCTS_FILE = "products.tsv";
+	public static final String ASSOCIATIONS_FILE = "associations.tsv";
+	public static final String USERS_FILE = "users.tsv";
+
+	/* random streams, one per kind of entity */
+	private static final long PREFERENCES_STREAM = 1;
+	private static final long PRODUCTS_STREAM = 2;
+	private static final long ASSOCIATIONS_STREAM = 3;
+	private static final long USERS_STREAM = 4;
+
+	private final long seed;
+	private int preferenceTagCount = 1000;
+	private int productTagCount = 10000;
+	private int preferenceCount = 50;
+	private int tagsPerPreference = 5;
+	private int productCount = 10000;
+	private double meanTagsPerProduct = 8.0;
+	private int associationsPerPreferenceTag = 100;
+	private double skew = 1.0;
+	/* the share of associations with extreme values, that create contradictions for strict users */
+	private double extremeAssociationShare = 0.01;
+	private int userCount = 1000;
+
+	/* cumulative popularity of the product tags, built on demand for the current sizes */
+	private double[] productTagPopularity;
+	private boolean[] chosenProductTags;
+
+	/**
+	 * Constructor, with the default sizes.
+	 * @param seed the random seed
+	 */
+	public OntologyGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/* Tags */
+
+	public List<PreferenceTag> preferenceTags() {
+		List<PreferenceTag> tags = new ArrayList<>(preferenceTagCount);
+		for(long id = 1; id <= preferenceTagCount; id++) {
+			tags.add(new PreferenceTag(id, "w" + id));
+		}
+		return tags;
+	}
+
+	public List<ProductTag> productTags() {
+		List<ProductTag> tags = new ArrayList<>(productTagCount);
+		for(long id = 1; id <= productTagCount; id++) {
+			tags.add(new ProductTag(id, "z" + id));
+		}
+		return tags;
+	}
+
+	/* Preferences */
+
+	/**
+	 * @param preferenceTags the preference tags, as returned by {@link #preferenceTags()}
+	 * @return the preferences, with {@link #getTagsPerPreference()} distinct tags each
+	 */
+	public List<Preference> preferences(List<PreferenceTag> preferenceTags) {
+		Random random = random(PREFERENCES_STREAM);
+		List<Preference> preferences = new ArrayList<>(preferenceCount);
+		int tags = Math.min(tagsPerPreference, preferenceTagCount);
+		for(long id = 1; id <= preferenceCount; id++) {
+			Preference preference = new Preference("c" + id, id);
+			for(int ordinal : distinctUniform(random, tags, preferenceTagCount)) {
+				preference.addTag(preferenceTags.get(ordinal));
+			}
+			preferences.add(preference);
+		}
+		return preferences;
+	}
+
+	/* Products */
+
+	/**
+	 * Streams the products of the catalog.
+	 * @param consumer receives the products in ascending id
+	 */
+	public void generateProducts(Consumer<Product> consumer) {
+		Random random = random(PRODUCTS_STREAM);
+		for(long id = 1; id <= productCount; id++) {
+			Product product = new Product("ean" + id, id);
+			int tags = Math.min(1 + poisson(random, meanTagsPerProduct - 1), productTagCount);
+			int[] ordinals = distinctPopular(random, tags);
+			long[] tagIds = new long[ordinals.length];
+			for(int i = 0; i < ordinals.length; i++) {
+				tagIds[i] = ordinals[i] + 1L;
+			}
+			product.setTags(ProductTagSet.of(tagIds));
+			consumer.accept(product);
+		}
+	}
+
+	/**
+	 * @return the products in ascending id
+	 */
+	public List<Product> products() {
+		List<Product> products = new ArrayList<>(productCount);
+		generateProducts(products::add);
+		return products;
+	}
+
+	/* Associations */
+
+	/**
+	 * Streams the associations, preference tag by preference tag. Each preference tag is associated with a number of
+	 * distinct product tags around {@link #getAssociationsPerPreferenceTag()}, picked by popularity. The association
+	 * values are multiples of 0.1 in [-1, 1] without 0.
+	 * @param consumer receives the associations
+	 */
+	public void generateAssociations(Consumer<Association> consumer) {
+		Random random = random(ASSOCIATIONS_STREAM);
+		for(long preferenceTagId = 1; preferenceTagId <= preferenceTagCount; preferenceTagId++) {
+			int associations = Math.min(1 + poisson(random, associationsPerPreferenceTag - 1), productTagCount);
+			for(int ordinal : distinctPopular(random, associations)) {
+				double value;
+				if(random.nextDouble() < extremeAssociationShare) {
+					value = random.nextBoolean() ? 1.0 : -1.0;
+				} else {
+					value = (1 + random.nextInt(9))/10.0;
+					value = random.nextBoolean() ? value : -value;
+				}
+				consumer.accept(new Association(ordinal + 1L, preferenceTagId, value));
+			}
+		}
+	}
+
+	/**
+	 * @param storage the storage of the association map
+	 * @return an association map with all the generated associations
+	 */
+	public AssociationMap associations(Storage storage) {
+		AssociationMap map = new AssociationMap(storage);
+		generateAssociations(map::addPair);
+		return map;
+	}
+
+	/* Users */
+
+	/**
+	 * Streams the users. Every user answers every preference of the questionnaire with an integer score from 0 to
+	 * {@link Scores#maxUserPreference}, normally distributed around {@link Scores#meanUserPreference}.
+	 * @param preferences the preferences, as returned by {@link #preferences(List)}
+	 * @param consumer receives the users
+	 */
+	public void generateUsers(List<Preference> preferences, Consumer<User> consumer) {
+		Random random = random(USERS_STREAM);
+		for(int id = 1; id <= userCount; id++) {
+			User user = new User("u" + id);
+			for(Preference preference : preferences) {
+				double score = Math.rint(Scores.meanUserPreference + random.nextGaussian()*Scores.meanUserPreference/2);
+				user.addPreference(preference, Math.max(0, Math.min(Scores.maxUserPreference, score)));
+			}
+			consumer.accept(user);
+		}
+	}
+
+	/**
+	 * @param preferences the preferences, as returned by {@link #preferences(List)}
+	 * @return the users
+	 */
+	public List<User> users(List<Preference> preferences) {
+		List<User> users = new ArrayList<>(userCount);
+		generateUsers(preferences, users::add);
+		return users;
+	}
+
+	/* Files */
+
+	/**
+	 * Writes the whole generated setting to tab separated files in a directory, streaming the products, associations
+	 * and users.
+	 * @param directory the directory of the files, created if missing
+	 * @throws IOException
+	 */
+	public void write(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		List<PreferenceTag> preferenceTags = preferenceTags();
+		try(BufferedWriter writer = writer(directory, PREFERENCE_TAGS_FILE)) {
+			for(PreferenceTag tag : preferenceTags) {
+				writeLine(writer, Long.toString(tag.getId()), tag.getName());
+			}
+		}
+		try(BufferedWriter writer = writer(directory, PRODUCT_TAGS_FILE)) {
+			for(ProductTag tag : productTags()) {
+				writeLine(writer, Long.toString(tag.getId()), tag.getName());
+			}
+		}
+		List<Preference> preferences = preferences(preferenceTags);
+		try(BufferedWriter writer = writer(directory, PREFERENCES_FILE)) {
+			for(Preference preference : preferences) {
+				StringBuilder tagIds = new StringBuilder();
+				for(Long tagId : preference.getTagIds()) {
+					tagIds.append(tagIds.length() == 0 ? "" : ",").append(tagId);
+				}
+				writeLine(writer, Long.toString(preference.getId()), preference.getName(), tagIds.toString());
+			}
+		}
+		try(BufferedWriter writer = writer(directory, PRODUCTS_FILE)) {
+			generateProducts(product -> {
+				StringBuilder tagIds = new StringBuilder();
+				for(Long tagId : product.getTagIds()) {
+					tagIds.append(tagIds.length() == 0 ? "" : ",").append(tagId);
+				}
+				writeLine(writer, Long.toString(product.getId()), product.getEan(), tagIds.toString());
+			});
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+		try(BufferedWriter writer = writer(directory, ASSOCIATIONS_FILE)) {
+			generateAssociations(association -> writeLine(writer, Long.toString(association.getPreferenceTagId()),
+					Long.toString(association.getProductTagId()), Double.toString(association.getAssociationValue())));
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+		try(BufferedWriter writer = writer(directory, USERS_FILE)) {
+			generateUsers(preferences, user -> {
+				StringBuilder scores = new StringBuilder();
+				for(Entry<Preference, Double> preferenceAndScore : user.getPreferences().entrySet()) {
+					scores.append(scores.length() == 0 ? "" : ",").append(preferenceAndScore.getKey().getId()).append(':').append(preferenceAndScore.getValue());
+				}
+				writeLine(writer, user.getUid(), scores.toString());
+			});
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static BufferedWriter writer(Path directory, String file) throws IOException {
+		return Files.newBufferedWriter(directory.resolve(file), StandardCharsets.UTF_8);
+	}
+
+	private static void writeLine(BufferedWriter writer, String ... columns) {
+		try {
+			writer.write(StringHelper.implodeArray(columns, "\t"));
+			writer.newLine();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/* Sampling */
+
+	private Random random(long stream) {
+		return new Random(seed ^ (stream * 0x9E3779B97F4A7C15L));
+	}
+
+	/**
+	 * @return a Poisson variable, by inversion of the cumulative distribution for small means and by the normal
+	 * approximation for large ones
+	 */
+	private static int poisson(Random random, double mean) {
+		if(mean <= 0) {
+			return 0;
+		} else if(mean > 30) {
+			return (int) Math.max(0, Math.round(mean + Math.sqrt(mean)*random.nextGaussian()));
+		}
+		double probability = Math.exp(-mean);
+		double cumulative = probability;
+		double uniform = random.nextDouble();
+		int value = 0;
+		while(uniform > cumulative && probability > 0) {
+			value++;
+			probability *= mean/value;
+			cumulative += probability;
+		}
+		return value;
+	}
+
+	/**
+	 * @return count distinct ordinals in [0, bound), drawn uniformly
+	 */
+	private static int[] distinctUniform(Random random, int count, int bound) {
+		int[] ordinals = new int[count];
+		for(int i = 0; i < count; i++) {
+			int ordinal;
+			do {
+				ordinal = random.nextInt(bound);
+			} while(contains(ordinals, i, ordinal));
+			ordinals[i] = ordinal;
+		}
+		return ordinals;
+	}
+
+	/**
+	 * @return count distinct product tag ordinals, drawn by the Zipf popularity of the product tags. Ordinals are
+	 * drawn with rejection of the chosen ones, and once the rejections pile up, e.g. for a count close to the number of
+	 * product tags, the rest are drawn exactly from the ordinals that are left, see
+	 * {@link #remainingPopular(Random, int[], int)}.
+	 */
+	private int[] distinctPopular(Random random, int count) {
+		if(productTagPopularity == null || productTagPopularity.length != productTagCount) {
+			productTagPopularity = zipfCumulative(productTagCount, skew);
+			chosenProductTags = new boolean[productTagCount];
+		}
+		int[] ordinals = new int[count];
+		int rejections = 0;
+		int i = 0;
+		while(i < count && rejections <= 2*count + 16) {
+			int found = Arrays.binarySearch(productTagPopularity, random.nextDouble());
+			int ordinal = Math.min(found < 0 ? -found - 1 : found, productTagCount - 1);
+			if(chosenProductTags[ordinal]) {
+				rejections++;
+				continue;
+			}
+			chosenProductTags[ordinal] = true;
+			ordinals[i++] = ordinal;
+		}
+		if(i < count) {
+			remainingPopular(random, ordinals, i);
+		}
+		for(int ordinal : ordinals) {
+			chosenProductTags[ordinal] = false;
+		}
+		return ordinals;
+	}
+
+	/**
+	 * Draws the ordinals that are missing from the ones not chosen yet, without replacement, by the keys
+	 * u^(1/weight) of Efraimidis and Spirakis: the ordinals with the largest keys are taken. The keys are compared as
+	 * log(u)/weight, so that the tiny weights of the last ranks under a high skew do not underflow.
+	 * @param ordinals the ordinals, chosen up to the given length
+	 * @param chosen the number of ordinals already chosen
+	 */
+	private void remainingPopular(Random random, int[] ordinals, int chosen) {
+		int[] remaining = new int[productTagCount - chosen];
+		double[] keys = new double[remaining.length];
+		int size = 0;
+		for(int ordinal = 0; ordinal < productTagCount; ordinal++) {
+			if(!chosenProductTags[ordinal]) {
+				remaining[size] = ordinal;
+				keys[size++] = Math.log(random.nextDouble())*Math.pow(ordinal + 1, skew);
+			}
+		}
+		double[] sortedKeys = keys.clone();
+		Arrays.sort(sortedKeys);
+		double threshold = sortedKeys[size - (ordinals.length - chosen)];
+		//the keys above the threshold first, then ties with it in ordinal order
+		for(int i = 0; i < size; i++) {
+			if(keys[i] > threshold) {
+				chosenProductTags[remaining[i]] = true;
+				ordinals[chosen++] = remaining[i];
+			}
+		}
+		for(int i = 0; i < size && chosen < ordinals.length; i++) {
+			if(keys[i] == threshold) {
+				chosenProductTags[remaining[i]] = true;
+				ordinals[chosen++] = remaining[i];
+			}
+		}
+	}
+
+	private static boolean contains(int[] values, int length, int value) {
+		for(int i = 0; i < length; i++) {
+			if(values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the normalized cumulative weights 1/rank^exponent
+	 */
+	private static double[] zipfCumulative(int size, double exponent) {
+		double[] cumulative = new double[size];
+		double sum = 0;
+		for(int rank = 0; rank < size; rank++) {
+			sum += 1.0/Math.pow(rank + 1, exponent);
+			cumulative[rank] = sum;
+		}
+		for(int rank = 0; rank < size; rank++) {
+			cumulative[rank] /= sum;
+		}
+		return cumulative;
+	}
+
+	/*Getters and Setters*/
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getPreferenceTagCount() {
+		return preferenceTagCount;
+	}
+
+	public void setPreferenceTagCount(int preferenceTagCount) {
+		this.preferenceTagCount = preferenceTagCount;
+	}
+
+	public int getProductTagCount() {
+		return productTagCount;
+	}
+
+	public void setProductTagCount(int productTagCount) {
+		this.productTagCount = productTagCount;
+	}
+
+	public int getPreferenceCount() {
+		return preferenceCount;
+	}
+
+	public void setPreferenceCount(int preferenceCount) {
+		this.preferenceCount = preferenceCount;
+	}
+
+	public int getTagsPerPreference() {
+		return tagsPerPreference;
+	}
+
+	public void setTagsPerPreference(int tagsPerPreference) {
+		this.tagsPerPreference = tagsPerPreference;
+	}
+
+	public int getProductCount() {
+		return productCount;
+	}
+
+	public void setProductCount(int productCount) {
+		this.productCount = productCount;
+	}
+
+	public double getMeanTagsPerProduct() {
+		return meanTagsPerProduct;
+	}
+
+	public void setMeanTagsPerProduct(double meanTagsPerProduct) {
+		this.meanTagsPerProduct = meanTagsPerProduct;
+	}
+
+	public int getAssociationsPerPreferenceTag() {
+		return associationsPerPreferenceTag;
+	}
+
+	/**
+	 * @param associationsPerPreferenceTag the mean number of associations of a preference tag, i.e. the density of the ontology
+	 */
+	public void setAssociationsPerPreferenceTag(int associationsPerPreferenceTag) {
+		this.associationsPerPreferenceTag = associationsPerPreferenceTag;
+	}
+
+	public double getSkew() {
+		return skew;
+	}
+
+	/**
+	 * @param skew the Zipf exponent of the product tag popularity, 0 for uniform popularity
+	 */
+	public void setSkew(double skew) {
+		this.skew = skew;
+		this.productTagPopularity = null;
+	}
+
+	public double getExtremeAssociationShare() {
+		return extremeAssociationShare;
+	}
+
+	public void setExtremeAssociationShare(double extremeAssociationShare) {
+		this.extremeAssociationShare = extremeAssociationShare;
+	}
+
+	public int getUserCount() {
+		return userCount;
+	}
+
+	public void setUserCount(int userCount) {
+		this.userCount = userCount;
+	}
+}
@@ -0,0 +1,283 @@
+package ch.ethz.coss.algorithm.utilities;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import ch.ethz.coss.algorithm.ontology.Association;
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.AssociationMap.Storage;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.PreferenceTag;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.ProductTag;
+import ch.ethz.coss.algorithm.ontology.ProductTagSet;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.DelimitedFileReader.Row;
+
+/**
+ * Loads an ontology, a product catalog and users from the tab separated files of a directory, in the format written by
+ * {@link OntologyGenerator#write(Path)}. The files are streamed with a {@link DelimitedFileReader} and, when read
+ * sequentially, every line is added directly to the {@link AssociationMap}, {@link Product} or {@link User} it
+ * describes, so that the lines of a file are never held in memory.
+ * <p>
+ * With a {@link ForkJoinPool}, the association and product files, which are the large ones, are parsed in parallel
+ * chunks. The associations and the products of each chunk are collected and then added in file order, so the
+ * insertion order of the association map, the chains of the packed storage and any snapshot written from the result
+ * are the same as after a sequential load. Only {@link #loadProducts(Consumer)} streams the products of the chunks
+ * concurrently.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public class OntologyLoader {
+
+	private final Path directory;
+	private final DelimitedFileReader reader;
+	private final ForkJoinPool pool;
+	private final int chunks;
+
+	/**
+	 * Constructor, reads every file sequentially.
+	 * @param directory the directory of the files
+	 */
+	public OntologyLoader(Path directory) {
+		this(directory, new DelimitedFileReader('\t'), null, 1);
+	}
+
+	/**
+	 * Constructor
+	 * @param directory the directory of the files
+	 * @param reader the reader of the files, with a tab delimiter
+	 * @param pool the pool that reads the association and product files in chunks, null to read them sequentially
+	 * @param chunks the number of chunks per file, e.g. the parallelism of the pool
+	 */
+	public OntologyLoader(Path directory, DelimitedFileReader reader, ForkJoinPool pool, int chunks) {
+		if(chunks < 1) {
+			throw new IllegalArgumentException("chunks must be positive: " + chunks);
+		}
+		this.directory = directory;
+		this.reader = reader;
+		this.pool = pool;
+		this.chunks = chunks;
+	}
+
+	/* Tags */
+
+	/**
+	 * @return the preference tags by id
+	 * @throws IOException
+	 */
+	public Map<Long, PreferenceTag> preferenceTags() throws IOException {
+		Map<Long, PreferenceTag> tags = new HashMap<>();
+		reader.read(directory.resolve(OntologyGenerator.PREFERENCE_TAGS_FILE), row -> {
+			long id = row.getLong(0);
+			tags.put(id, new PreferenceTag(id, row.getString(1)));
+		});
+		return tags;
+	}
+
+	/**
+	 * @return the product tags by id
+	 * @throws IOException
+	 */
+	public Map<Long, ProductTag> productTags() throws IOException {
+		Map<Long, ProductTag> tags = new HashMap<>();
+		reader.read(directory.resolve(OntologyGenerator.PRODUCT_TAGS_FILE), row -> {
+			long id = row.getLong(0);
+			tags.put(id, new ProductTag(id, row.getString(1)));
+		});
+		return tags;
+	}
+
+	/* Preferences */
+
+	/**
+	 * @param preferenceTags the preference tags by id, as returned by {@link #preferenceTags()}
+	 * @return the preferences by id
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a preference refers to an unknown preference tag
+	 */
+	public Map<Long, Preference> preferences(Map<Long, PreferenceTag> preferenceTags) throws IOException {
+		Map<Long, Preference> preferences = new HashMap<>();
+		reader.read(directory.resolve(OntologyGenerator.PREFERENCES_FILE), row -> {
+			Preference preference = new Preference(row.getString(1), row.getLong(0));
+			Row tagIds = row.split(2, ',');
+			for(int i = 0; i < tagIds.size(); i++) {
+				preference.addTag(find(preferenceTags, tagIds.getLong(i), "preference tag"));
+			}
+			preferences.put(preference.getId(), preference);
+		});
+		return preferences;
+	}
+
+	/* Products */
+
+	/**
+	 * Streams the products of the catalog. With a pool, the consumer is called concurrently.
+	 * @param consumer receives the products
+	 * @throws IOException
+	 */
+	public void loadProducts(Consumer<Product> consumer) throws IOException {
+		read(OntologyGenerator.PRODUCTS_FILE, row -> consumer.accept(product(row)));
+	}
+
+	/**
+	 * @return the products by id, added in file order
+	 * @throws IOException
+	 */
+	public Map<Long, Product> products() throws IOException {
+		Map<Long, Product> products = new HashMap<>();
+		if(pool == null) {
+			loadProducts(product -> products.put(product.getId(), product));
+			return products;
+		}
+		List<List<Product>> chunkProducts = new ArrayList<>();
+		for(int chunk = 0; chunk < chunks; chunk++) {
+			chunkProducts.add(new ArrayList<>());
+		}
+		reader.readChunks(directory.resolve(OntologyGenerator.PRODUCTS_FILE), chunk -> row -> chunkProducts.get(chunk).add(product(row)), pool, chunks);
+		for(List<Product> chunk : chunkProducts) {
+			for(Product product : chunk) {
+				products.put(product.getId(), product);
+			}
+		}
+		return products;
+	}
+
+	/**
+	 * @return the product of a line, with its tag set built once from all the tag ids of the line
+	 */
+	private static Product product(Row row) {
+		Product product = new Product(row.getString(1), row.getLong(0));
+		Row tagIds = row.split(2, ',');
+		long[] ids = new long[tagIds.size()];
+		for(int i = 0; i < ids.length; i++) {
+			ids[i] = tagIds.getLong(i);
+		}
+		product.setTags(ProductTagSet.of(ids));
+		return product;
+	}
+
+	/* Associations */
+
+	/**
+	 * Adds all the associations of the file to a map.
+	 * @param map the association map
+	 * @throws IOException
+	 */
+	public void loadAssociations(AssociationMap map) throws IOException {
+		if(pool == null) {
+			reader.read(directory.resolve(OntologyGenerator.ASSOCIATIONS_FILE), row -> map.addPair(new Association(row.getLong(1), row.getLong(0), row.getDouble(2))));
+			return;
+		}
+		AssociationColumns[] chunkAssociations = new AssociationColumns[chunks];
+		for(int chunk = 0; chunk < chunks; chunk++) {
+			chunkAssociations[chunk] = new AssociationColumns();
+		}
+		reader.readChunks(directory.resolve(OntologyGenerator.ASSOCIATIONS_FILE), chunk -> chunkAssociations[chunk], pool, chunks);
+		for(AssociationColumns chunk : chunkAssociations) {
+			chunk.addTo(map);
+		}
+	}
+
+	/**
+	 * @param storage the storage of the association map
+	 * @return an association map with all the associations of the file
+	 * @throws IOException
+	 */
+	public AssociationMap associations(Storage storage) throws IOException {
+		AssociationMap map = new AssociationMap(storage);
+		loadAssociations(map);
+		return map;
+	}
+
+	/* Users */
+
+	/**
+	 * Streams the users, in file order.
+	 * @param preferences the preferences by id, as returned by {@link #preferences(Map)}
+	 * @param consumer receives the users
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a user answers an unknown preference
+	 */
+	public void loadUsers(Map<Long, Preference> preferences, Consumer<User> consumer) throws IOException {
+		List<Pair<Preference, Double>> answers = new ArrayList<>();
+		reader.read(directory.resolve(OntologyGenerator.USERS_FILE), row -> {
+			User user = new User(row.getString(0));
+			Row scores = row.split(1, ',');
+			answers.clear();
+			for(int i = 0; i < scores.size(); i++) {
+				Row preferenceAndScore = scores.split(i, ':');
+				answers.add(new Pair<>(find(preferences, preferenceAndScore.getLong(0), "preference"), preferenceAndScore.getDouble(1)));
+			}
+			//one refresh of the scoring views per user
+			user.addPreferences(answers);
+			consumer.accept(user);
+		});
+	}
+
+	/**
+	 * @param preferences the preferences by id, as returned by {@link #preferences(Map)}
+	 * @return the users, in file order
+	 * @throws IOException
+	 */
+	public List<User> users(Map<Long, Preference> preferences) throws IOException {
+		List<User> users = new ArrayList<>();
+		loadUsers(preferences, users::add);
+		return users;
+	}
+
+	/**
+	 * The associations of a chunk as primitive columns, in file order.
+	 */
+	private static final class AssociationColumns implements DelimitedFileReader.RowHandler {
+		private long[] preferenceTagIds = new long[16];
+		private long[] productTagIds = new long[16];
+		private double[] values = new double[16];
+		private int size;
+
+		@Override
+		public void accept(Row row) {
+			if(size == values.length) {
+				preferenceTagIds = Arrays.copyOf(preferenceTagIds, size << 1);
+				productTagIds = Arrays.copyOf(productTagIds, size << 1);
+				values = Arrays.copyOf(values, size << 1);
+			}
+			preferenceTagIds[size] = row.getLong(0);
+			productTagIds[size] = row.getLong(1);
+			values[size] = row.getDouble(2);
+			size++;
+		}
+
+		void addTo(AssociationMap map) {
+			for(int i = 0; i < size; i++) {
+				map.addPair(new Association(productTagIds[i], preferenceTagIds[i], values[i]));
+			}
+		}
+	}
+
+	private void read(String file, DelimitedFileReader.RowHandler handler) throws IOException {
+		if(pool == null) {
+			reader.read(directory.resolve(file), handler);
+		} else {
+			reader.read(directory.resolve(file), handler, pool, chunks);
+		}
+	}
+
+	private static <T> T find(Map<Long, T> objects, long id, String kind) {
+		T object = objects.get(id);
+		if(object == null) {
+			throw new IllegalArgumentException("Unknown " + kind + ": " + id);
+		}
+		return object;
+	}
+}
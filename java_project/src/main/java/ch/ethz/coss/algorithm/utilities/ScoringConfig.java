@@ -0,0 +1,120 @@
+package ch.ethz.coss.algorithm.utilities;
+
+import java.io.Serializable;
+
+/**
+ * An immutable configuration of the score constants of a rating, i.e. the values of {@link Scores} fixed for one
+ * rating engine. Engines with different configurations, e.g. different rating scales, can rate concurrently in
+ * the same process. The default configuration of every engine is a snapshot of {@link Scores}, taken with
+ * {@link #fromScores()} when the engine is created.
+ * @author Thomas Asikis
+ * @license Copyright (c) 2017-2020 Thomas Asikis
+ *			Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 			The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 			THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+public final class ScoringConfig implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double maxAllowedAssociation;
+	private final double meanUserPreference;
+	private final double maxUserPreference;
+	private final double contradictionAssociationOffset;
+	private final double meanProductRating;
+	private final double ratingScale;
+
+	/**
+	 * Constructor. The maximum user preference and the contradiction offset are derived as in {@link Scores}.
+	 * @param maxAllowedAssociation the maximum absolute association, used for clipping
+	 * @param meanUserPreference the mean score of a preference statement, e.g. 5 for a scale of 0-10
+	 * @param meanProductRating the middle value of the rating scale
+	 * @param ratingScale how much lower or higher the rating can be from the mean rating
+	 */
+	public ScoringConfig(double maxAllowedAssociation, double meanUserPreference, double meanProductRating, double ratingScale) {
+		this(maxAllowedAssociation, meanUserPreference, 2*meanUserPreference,
+				-Math.abs(meanUserPreference)*Math.abs(maxAllowedAssociation), meanProductRating, ratingScale);
+	}
+
+	private ScoringConfig(double maxAllowedAssociation, double meanUserPreference, double maxUserPreference,
+			double contradictionAssociationOffset, double meanProductRating, double ratingScale) {
+		this.maxAllowedAssociation = maxAllowedAssociation;
+		this.meanUserPreference = meanUserPreference;
+		this.maxUserPreference = maxUserPreference;
+		this.contradictionAssociationOffset = contradictionAssociationOffset;
+		this.meanProductRating = meanProductRating;
+		this.ratingScale = ratingScale;
+	}
+
+	/**
+	 * @return a snapshot of the current values of {@link Scores}
+	 */
+	public static ScoringConfig fromScores() {
+		return new ScoringConfig(Scores.maxAllowedAssociation, Scores.meanUserPreference, Scores.maxUserPreference,
+				Scores.contradictionAssociationOffset, Scores.meanProductRating, Scores.ratingScale);
+	}
+
+	/**
+	 * Scales a non-scaled rating to the rating range, as shown in equation 23 of the Appendix.
+	 * Contradictions of strict preferences, i.e. negative infinite ratings, are mapped to 0.
+	 * @param rawProductRating the non-scaled rating
+	 * @return the product rating
+	 */
+	public double scale(double rawProductRating) {
+		double productRating = meanProductRating + (ratingScale * rawProductRating);
+		//handles strict preference case
+		return Double.isInfinite(productRating) && productRating < 0 ? 0 : productRating;
+	}
+
+	/**
+	 * The clipping function for aggregate association scores.
+	 * @param associationScore the association score or the value to be clipped.
+	 * @return the clipped score
+	 */
+	public double normalize(double associationScore) {
+		return associationScore < -maxAllowedAssociation ? -maxAllowedAssociation
+				: (associationScore > maxAllowedAssociation ? maxAllowedAssociation : associationScore);
+	}
+
+	/**
+	 * Contradiction activates only in the case offset and association are on extreme values and have opposite signs.
+	 * @param preferenceOffset the user offset of a preference
+	 * @param associationValue the association value
+	 * @return whether the association contradicts a strict preference
+	 */
+	public boolean isContradiction(double preferenceOffset, double associationValue) {
+		return preferenceOffset*associationValue == contradictionAssociationOffset;
+	}
+
+	@Override
+	public String toString() {
+		return "ScoringConfig{maxAllowedAssociation: " + maxAllowedAssociation + ", meanUserPreference: " + meanUserPreference
+				+ ", meanProductRating: " + meanProductRating + ", ratingScale: " + ratingScale + "}";
+	}
+
+	/*Getters*/
+
+	public double getMaxAllowedAssociation() {
+		return maxAllowedAssociation;
+	}
+
+	public double getMeanUserPreference() {
+		return meanUserPreference;
+	}
+
+	public double getMaxUserPreference() {
+		return maxUserPreference;
+	}
+
+	public double getContradictionAssociationOffset() {
+		return contradictionAssociationOffset;
+	}
+
+	public double getMeanProductRating() {
+		return meanProductRating;
+	}
+
+	public double getRatingScale() {
+		return ratingScale;
+	}
+}
@@ -0,0 +1,330 @@
+package algorithm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.ethz.coss.algorithm.ontology.Association;
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.AssociationMap.Storage;
+import ch.ethz.coss.algorithm.ontology.CompiledAssociations;
+import ch.ethz.coss.algorithm.ontology.OntologyRegistry;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.PreferenceTag;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.ProductTag;
+import ch.ethz.coss.algorithm.ontology.ProductTagSet;
+import ch.ethz.coss.algorithm.ontology.ReferenceAssociation;
+import junit.framework.TestCase;
+
+/**Lookups on the association map, checked against the associations added in the setting **/
+public class TestAssociationMap {
+	AssociationMap map;
+	PreferenceTag w1, w2, w3;
+	ProductTag z1, z2, z3;
+	Preference c1;
+
+	@Before
+	public void prepareSetting() {
+		prepareSetting(Storage.CONCURRENT);
+	}
+
+	public void prepareSetting(Storage storage) {
+		w1 = new PreferenceTag(1, "w1");
+		w2 = new PreferenceTag(2, "w2");
+		w3 = new PreferenceTag(3, "w3");
+
+		//product tag ids overlap with the preference tag ids on purpose
+		z1 = new ProductTag(1, "z1");
+		z2 = new ProductTag(2, "z2");
+		z3 = new ProductTag(3, "z3");
+
+		c1 = new Preference("c1.", 1);
+		c1.addTags(w1, w2);
+
+		map = new AssociationMap(storage);
+		map.addPair(new Association(z1, w1, 0.4));
+		map.addPair(new Association(z2, w1, -0.3));
+		map.addPair(new Association(z2, w2, 1.0));
+		map.addMapping(w3, z3, 0.5);
+		//replaces the previous value of the pair
+		map.addMapping(w1, z2, -0.6);
+	}
+
+	@Test
+	public void findTest() {
+		List<Association> w1Associations = map.find(w1.getId());
+		TestCase.assertEquals(2, w1Associations.size());
+		TestCase.assertEquals(-0.6, map.getScore(w1.getId(), z2.getId()));
+		TestCase.assertTrue(productTagIds(w1Associations).contains(z1.getId()));
+		TestCase.assertTrue(productTagIds(w1Associations).contains(z2.getId()));
+
+		TestCase.assertEquals(1, map.find(w3.getId()).size());
+		TestCase.assertTrue(map.find(42L).isEmpty());
+
+		//the primitive accessors agree with the association objects
+		TestCase.assertEquals(-0.6, map.getValue(w1.getId(), z2.getId()));
+		TestCase.assertTrue(Double.isNaN(map.getValue(w3.getId(), z1.getId())));
+		List<Association> visited = new ArrayList<>();
+		map.forEach(w1.getId(), (preferenceTagId, productTagId, associationValue) -> visited.add(new Association(productTagId, preferenceTagId, associationValue)));
+		TestCase.assertEquals(w1Associations.size(), visited.size());
+		for(int i = 0; i < visited.size(); i++) {
+			TestCase.assertEquals(w1Associations.get(i).getProductTagId(), visited.get(i).getProductTagId());
+			TestCase.assertEquals(w1Associations.get(i).getAssociationValue(), visited.get(i).getAssociationValue());
+		}
+
+		List<Association> c1Associations = map.find(c1);
+		TestCase.assertEquals(3, c1Associations.size());
+		for(Association association : c1Associations) {
+			TestCase.assertTrue(c1.getTagIds().contains(association.getPreferenceTagId()));
+		}
+	}
+
+	@Test
+	public void productLookupTest() {
+		Product product = new Product("p1", 1);
+		product.addTags(z1, z2);
+
+		TestCase.assertEquals(2, map.findByProductTag(z2.getId()).size());
+		TestCase.assertTrue(map.findByProductTag(42L).isEmpty());
+
+		Map<Long, List<Association>> grouped = map.findAll(product);
+		TestCase.assertEquals(2, grouped.size());
+		TestCase.assertEquals(2, grouped.get(w1.getId()).size());
+		TestCase.assertEquals(1, grouped.get(w2.getId()).size());
+		TestCase.assertFalse(grouped.containsKey(w3.getId()));
+
+		TestCase.assertEquals(3, map.findAll(c1, product).size());
+		TestCase.assertEquals(2, map.matchAll(w1.getId(), product).size());
+		TestCase.assertTrue(map.matchAll(w3.getId(), product).isEmpty());
+		TestCase.assertEquals(2, map.findAll(c1, z2).size());
+		TestCase.assertTrue(map.findAll(c1, z3).isEmpty());
+	}
+
+	@Test
+	public void packedStorageTest() {
+		prepareSetting(Storage.PACKED);
+		findTest();
+		productLookupTest();
+		TestCase.assertEquals(4, map.size());
+		TestCase.assertEquals(4, map.getAssociations().size());
+		TestCase.assertNull(map.getMapping(w3.getId(), z1.getId()));
+		TestCase.assertFalse(map.contains(-1L, z1.getId()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void packedStorageRejectsWideIdsTest() {
+		AssociationMap packed = new AssociationMap(Storage.PACKED);
+		packed.addPair(new Association(1L, 1L << 32, 0.5));
+	}
+
+	@Test
+	public void compiledTest() {
+		CompiledAssociations compiled = map.compile();
+		map = compiled.asAssociationMap();
+		findTest();
+		productLookupTest();
+		TestCase.assertEquals(4, compiled.size());
+		TestCase.assertEquals(3, compiled.preferenceTagCount());
+		TestCase.assertEquals(3, compiled.productTagCount());
+
+		int w1Ordinal = compiled.preferenceTagOrdinal(w1.getId());
+		TestCase.assertEquals(2, compiled.rowEnd(w1Ordinal) - compiled.rowStart(w1Ordinal));
+		for(int entry = compiled.rowStart(w1Ordinal) + 1; entry < compiled.rowEnd(w1Ordinal); entry++) {
+			TestCase.assertTrue(compiled.productTagOrdinalAt(entry - 1) < compiled.productTagOrdinalAt(entry));
+		}
+		int entry = compiled.entryOf(w1Ordinal, compiled.productTagOrdinal(z2.getId()));
+		TestCase.assertEquals(-0.6, compiled.valueAt(entry));
+		TestCase.assertEquals(-1, compiled.entryOf(w1Ordinal, compiled.productTagOrdinal(z3.getId())));
+		TestCase.assertEquals(-1, compiled.preferenceTagOrdinal(42L));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void compiledIsReadOnlyTest() {
+		map.compile().asAssociationMap().addMapping(w1, z3, 0.1);
+	}
+
+	@Test
+	public void referenceAssociationTest() {
+		ReferenceAssociation reference = map.getReferenceAssociation(w1.getId());
+		TestCase.assertEquals(0.4, reference.getPositiveSum(), 1e-12);
+		TestCase.assertEquals(-0.6, reference.getNegativeSum(), 1e-12);
+		TestCase.assertSame(reference, map.getReferenceAssociation(w1.getId()));
+
+		CompiledAssociations compiled = map.compile();
+		int w1Ordinal = compiled.preferenceTagOrdinal(w1.getId());
+		TestCase.assertEquals(0.4, compiled.positiveSum(w1Ordinal), 1e-12);
+		TestCase.assertEquals(-0.6, compiled.negativeSum(w1Ordinal), 1e-12);
+
+		//additions invalidate the cached value of the preference tag
+		map.addMapping(w1, z3, 0.5);
+		TestCase.assertEquals(0.9, map.getReferenceAssociation(w1.getId()).getPositiveSum(), 1e-12);
+		TestCase.assertEquals(0.0, map.getReferenceAssociation(42L).getPositiveSum());
+	}
+
+	@Test
+	public void productTagSetTest() {
+		Product product = new Product("p1", 1);
+		product.addTagIds(5L, 3L, 5L);
+		product.addTag(z1);
+		product.addTagIds(Arrays.asList(3L, 7L));
+		TestCase.assertEquals(new HashSet<>(Arrays.asList(1L, 3L, 5L, 7L)), product.getTagIds());
+		TestCase.assertEquals(1L, product.getTagSet().get(0));
+		TestCase.assertTrue(product.getTagIds().contains(7L));
+		TestCase.assertFalse(product.getTagSet().contains(2L));
+
+		ProductTagSet targets = ProductTagSet.of(7L, 2L, 1L);
+		TestCase.assertEquals(ProductTagSet.of(1L, 7L), product.getTagSet().intersect(targets));
+		TestCase.assertEquals(5, product.getTagSet().union(targets).size());
+		TestCase.assertTrue(product.getTagSet().intersect(ProductTagSet.of(2L)).isEmpty());
+
+		List<Association> w1Associations = product.getTagSet().filter(map.find(w1.getId()));
+		TestCase.assertEquals(1, w1Associations.size());
+		TestCase.assertEquals(z1.getId(), w1Associations.get(0).getProductTagId());
+		//the rows of compiled associations are in ascending product tag order
+		product.addTag(z2);
+		List<Association> compiledRow = map.compile().asAssociationMap().find(w1.getId());
+		TestCase.assertEquals(productTagIds(map.find(w1.getId())), productTagIds(product.getTagSet().filter(compiledRow)));
+		TestCase.assertTrue(ProductTagSet.of(42L).filter(compiledRow).isEmpty());
+	}
+
+	@Test
+	public void productSerializationTest() throws Exception {
+		Product product = new Product("p1", 1, "name", null, null);
+		product.addTags(z2, z1);
+		Product copy = deserialize(serialize(product));
+		TestCase.assertEquals(product.getTagSet(), copy.getTagSet());
+		TestCase.assertEquals("name", copy.getName());
+		TestCase.assertFalse(product.getTagVersion() == copy.getTagVersion());
+
+		//written while the tags were a hash set
+		try(InputStream in = TestAssociationMap.class.getResourceAsStream("/product-v1.ser")) {
+			Product legacy = deserialize(in);
+			TestCase.assertEquals(ProductTagSet.of(7L, 8L, 9L), legacy.getTagSet());
+			TestCase.assertEquals(5, legacy.getId());
+			TestCase.assertEquals("ingredients", legacy.getIngredients());
+			TestCase.assertTrue(legacy.getCategories().isEmpty());
+		}
+	}
+
+	@Test
+	public void tagInformationTest() {
+		Product product = new Product("p1", 1);
+		product.addTagId(42L);
+		TestCase.assertFalse(map.hasTagInformation(product));
+		TestCase.assertFalse(map.isReachable(42L));
+
+		//both new product tags and new associations are seen
+		product.addTag(z3);
+		TestCase.assertTrue(map.hasTagInformation(product));
+		Product other = new Product("p2", 2);
+		other.addTagId(43L);
+		TestCase.assertFalse(map.hasTagInformation(other));
+		map.addMapping(w1, new ProductTag(43, "z43"), 0.1);
+		TestCase.assertTrue(map.hasTagInformation(other));
+
+		for(Storage storage : Storage.values()) {
+			prepareSetting(storage);
+			TestCase.assertTrue(map.hasTagInformation(product));
+			TestCase.assertFalse(map.hasTagInformation(other));
+		}
+		TestCase.assertTrue(map.compile().asAssociationMap().hasTagInformation(product));
+		TestCase.assertFalse(map.compile().asAssociationMap().hasTagInformation(other));
+	}
+
+	@Test
+	public void registryTest() {
+		Product product = new Product("p1", 1);
+		product.addTags(z2, z1);
+
+		OntologyRegistry registry = new OntologyRegistry();
+		TestCase.assertEquals(0, registry.register(c1));
+		TestCase.assertEquals(0, registry.register(product));
+		TestCase.assertEquals(0, registry.register(c1));
+		TestCase.assertEquals(2, registry.preferenceTagCount());
+		TestCase.assertEquals(2, registry.productTagCount());
+		TestCase.assertSame(c1, registry.getPreference(0));
+		TestCase.assertEquals(product.getId(), registry.productId(0));
+
+		//the product tags were registered by id, the tag objects complete them
+		int z1Ordinal = registry.productTagOrdinal(z1.getId());
+		TestCase.assertNull(registry.getProductTag(z1Ordinal));
+		TestCase.assertEquals(z1Ordinal, registry.register(z1));
+		TestCase.assertSame(z1, registry.getProductTag(z1Ordinal));
+
+		//ordinals are dense and separate per kind
+		registry.register(map);
+		TestCase.assertEquals(3, registry.preferenceTagCount());
+		TestCase.assertEquals(3, registry.productTagCount());
+		TestCase.assertEquals(2, registry.preferenceTagOrdinal(w3.getId()));
+		TestCase.assertEquals(2, registry.productTagOrdinal(z3.getId()));
+		TestCase.assertEquals(w3.getId(), registry.preferenceTagId(2));
+		TestCase.assertEquals(-1, registry.productTagOrdinal(42L));
+
+		int[] productTags = registry.productTagOrdinals(product);
+		TestCase.assertEquals(2, productTags.length);
+		TestCase.assertTrue(productTags[0] < productTags[1]);
+		TestCase.assertEquals(2, registry.preferenceTagOrdinals(c1).length);
+	}
+
+	@Test
+	public void serializationTest() throws Exception {
+		for(Storage storage : Storage.values()) {
+			prepareSetting(storage);
+			map.getReferenceAssociation(w1.getId());
+			map = deserialize(serialize(map));
+			findTest();
+			TestCase.assertEquals(0.4, map.getReferenceAssociation(w1.getId()).getPositiveSum(), 1e-12);
+			map.addMapping(w3, z1, 0.7);
+			TestCase.assertEquals(0.7, map.getScore(w3.getId(), z1.getId()));
+		}
+
+		//written before the storage backends, with the associations in a single concurrent map
+		try(InputStream in = TestAssociationMap.class.getResourceAsStream("/association-map-v1.ser")) {
+			AssociationMap legacy = deserialize(in);
+			TestCase.assertEquals(3, legacy.getAssociations().size());
+			TestCase.assertEquals(-0.25, legacy.getScore(1, 8));
+			TestCase.assertEquals(new HashSet<>(Arrays.asList(7L, 8L)), productTagIds(legacy.find(1)));
+			TestCase.assertEquals(1.0, legacy.getReferenceAssociation(2).getPositiveSum());
+		}
+	}
+
+	static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+
+	static <T> T deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		return deserialize(new ByteArrayInputStream(bytes));
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T deserialize(InputStream bytes) throws IOException, ClassNotFoundException {
+		try(ObjectInputStream in = new ObjectInputStream(bytes)) {
+			return (T) in.readObject();
+		}
+	}
+
+	static Set<Long> productTagIds(List<Association> associations) {
+		Set<Long> ids = new HashSet<>();
+		for(Association association : associations) {
+			ids.add(association.getProductTagId());
+		}
+		return ids;
+	}
+}
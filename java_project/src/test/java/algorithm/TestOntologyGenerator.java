@@ -0,0 +1,259 @@
+package algorithm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.ethz.coss.algorithm.BatchProductRating;
+import ch.ethz.coss.algorithm.ParallelProductRating;
+import ch.ethz.coss.algorithm.Recommendation;
+import ch.ethz.coss.algorithm.ontology.Association;
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.AssociationMap.Storage;
+import ch.ethz.coss.algorithm.ontology.OntologySnapshot;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.PreferenceTag;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.DelimitedFileReader;
+import ch.ethz.coss.algorithm.utilities.OntologyGenerator;
+import ch.ethz.coss.algorithm.utilities.OntologyLoader;
+import junit.framework.TestCase;
+
+/**The same seed and sizes should always give the same synthetic setting, in memory and in files **/
+public class TestOntologyGenerator {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	OntologyGenerator generator(long seed) {
+		OntologyGenerator generator = new OntologyGenerator(seed);
+		generator.setPreferenceTagCount(50);
+		generator.setProductTagCount(500);
+		generator.setPreferenceCount(10);
+		generator.setProductCount(200);
+		generator.setAssociationsPerPreferenceTag(40);
+		generator.setUserCount(20);
+		return generator;
+	}
+	
+	@Test
+	public void reproducibleTest() throws IOException {
+		Path first = folder.newFolder("first").toPath();
+		Path second = folder.newFolder("second").toPath();
+		generator(7).write(first);
+		//generating in memory first must not change the files
+		OntologyGenerator generator = generator(7);
+		AssociationMap map = generator.associations(Storage.PACKED);
+		List<Product> products = generator.products();
+		generator.write(second);
+		
+		for(String file : Arrays.asList(OntologyGenerator.PREFERENCE_TAGS_FILE, OntologyGenerator.PRODUCT_TAGS_FILE, OntologyGenerator.PREFERENCES_FILE,
+				OntologyGenerator.PRODUCTS_FILE, OntologyGenerator.ASSOCIATIONS_FILE, OntologyGenerator.USERS_FILE)) {
+			TestCase.assertTrue(file, Arrays.equals(Files.readAllBytes(first.resolve(file)), Files.readAllBytes(second.resolve(file))));
+		}
+		
+		List<String> associations = Files.readAllLines(first.resolve(OntologyGenerator.ASSOCIATIONS_FILE), StandardCharsets.UTF_8);
+		TestCase.assertEquals(associations.size(), map.size());
+		for(String line : associations) {
+			String[] columns = line.split("\t");
+			TestCase.assertEquals(Double.parseDouble(columns[2]), map.getScore(Long.parseLong(columns[0]), Long.parseLong(columns[1])));
+		}
+		TestCase.assertEquals(200, products.size());
+		for(Product product : products) {
+			TestCase.assertTrue(product.getTagIds().size() > 0);
+		}
+		
+		List<Preference> preferences = generator.preferences(generator.preferenceTags());
+		TestCase.assertEquals(10, preferences.size());
+		TestCase.assertEquals(20, generator.users(preferences).size());
+		
+		//another seed gives another ontology
+		Path third = folder.newFolder("third").toPath();
+		generator(8).write(third);
+		TestCase.assertFalse(Arrays.equals(Files.readAllBytes(first.resolve(OntologyGenerator.ASSOCIATIONS_FILE)),
+				Files.readAllBytes(third.resolve(OntologyGenerator.ASSOCIATIONS_FILE))));
+	}
+	
+	@Test(timeout = 10000)
+	public void fullDensityTest() {
+		//every product tag is associated with the preference tag, the last ranks are too rare to be drawn by rejection
+		for(double skew : new double[] {2, 5}) {
+			OntologyGenerator generator = new OntologyGenerator(7);
+			generator.setPreferenceTagCount(1);
+			generator.setProductTagCount(2000);
+			generator.setAssociationsPerPreferenceTag(2000);
+			generator.setSkew(skew);
+			AssociationMap map = generator.associations(Storage.PACKED);
+			AssociationMap again = generator.associations(Storage.PACKED);
+			TestCase.assertEquals(2000, map.size());
+			for(long productTagId = 1; productTagId <= 2000; productTagId++) {
+				TestCase.assertTrue(map.contains(1, productTagId));
+				TestCase.assertEquals(map.getScore(1, productTagId), again.getScore(1, productTagId));
+			}
+		}
+	}
+	
+	@Test
+	public void loaderTest() throws IOException {
+		Path directory = folder.newFolder("loaded").toPath();
+		OntologyGenerator generator = generator(7);
+		generator.write(directory);
+		AssociationMap expectedMap = generator.associations(Storage.CONCURRENT);
+		List<Product> expectedProducts = generator.products();
+		List<Preference> expectedPreferences = generator.preferences(generator.preferenceTags());
+		List<User> expectedUsers = generator.users(expectedPreferences);
+		
+		//a tiny buffer splits lines across reads, and the chunks split the files at arbitrary bytes
+		AssociationMap sequentialMap = new OntologyLoader(directory).associations(Storage.PACKED);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for(OntologyLoader loader : Arrays.asList(new OntologyLoader(directory),
+					new OntologyLoader(directory, new DelimitedFileReader('\t', 7), pool, 5))) {
+				AssociationMap map = loader.associations(Storage.PACKED);
+				TestCase.assertEquals(expectedMap.size(), map.size());
+				for(Association association : expectedMap.getAssociations().values()) {
+					TestCase.assertEquals(association.getAssociationValue(), map.getScore(association.getPreferenceTagId(), association.getProductTagId()));
+				}
+				//the parallel chunks are added in file order, so the associations of a preference tag are visited as after a sequential load
+				for(PreferenceTag preferenceTag : generator.preferenceTags()) {
+					List<Long> expectedOrder = new ArrayList<>();
+					sequentialMap.forEach(preferenceTag.getId(), (preferenceTagId, productTagId, associationValue) -> expectedOrder.add(productTagId));
+					List<Long> order = new ArrayList<>();
+					map.forEach(preferenceTag.getId(), (preferenceTagId, productTagId, associationValue) -> order.add(productTagId));
+					TestCase.assertEquals(expectedOrder, order);
+				}
+				Map<Long, Product> products = loader.products();
+				TestCase.assertEquals(expectedProducts.size(), products.size());
+				for(Product product : expectedProducts) {
+					TestCase.assertEquals(product.getEan(), products.get(product.getId()).getEan());
+					TestCase.assertEquals(product.getTagIds(), products.get(product.getId()).getTagIds());
+				}
+				Map<Long, PreferenceTag> preferenceTags = loader.preferenceTags();
+				TestCase.assertEquals(50, preferenceTags.size());
+				TestCase.assertEquals(500, loader.productTags().size());
+				Map<Long, Preference> preferences = loader.preferences(preferenceTags);
+				for(Preference preference : expectedPreferences) {
+					TestCase.assertEquals(preference.getTagIds(), preferences.get(preference.getId()).getTagIds());
+				}
+				List<User> users = loader.users(preferences);
+				TestCase.assertEquals(expectedUsers.size(), users.size());
+				for(int i = 0; i < users.size(); i++) {
+					TestCase.assertEquals(expectedUsers.get(i).getUid(), users.get(i).getUid());
+					for(int preference = 0; preference < expectedPreferences.size(); preference++) {
+						TestCase.assertEquals(expectedUsers.get(i).getPreferenceList().get(preference).getId(), users.get(i).getPreferenceList().get(preference).getId());
+						TestCase.assertEquals(expectedUsers.get(i).getScore(preference), users.get(i).getScore(preference));
+					}
+					TestCase.assertEquals(expectedUsers.get(i).getTotalAbsoluteOffset(), users.get(i).getTotalAbsoluteOffset());
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		
+		//windows line ends, empty lines and fields, other number notations and a last line without line end
+		Path file = directory.resolve("rows.tsv");
+		Files.write(file, "1\t-0.25\tä\r\n\n2\t1.0E-4\t\n3\t12345678901234567\tx,y".getBytes(StandardCharsets.UTF_8));
+		List<String> rows = new ArrayList<>();
+		new DelimitedFileReader('\t', 4).read(file, row -> {
+			rows.add(row.getLong(0) + "|" + row.getDouble(1) + "|" + row.getString(2) + "|" + row.split(2, ',').size());
+		});
+		TestCase.assertEquals(Arrays.asList("1|-0.25|ä|1", "2|1.0E-4||0", "3|1.2345678901234568E16|x,y|2"), rows);
+	}
+	
+	@Test
+	public void parallelRatingTest() {
+		OntologyGenerator generator = generator(7);
+		List<Preference> preferences = generator.preferences(generator.preferenceTags());
+		List<Product> products = generator.products();
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for(Storage storage : Storage.values()) {
+				AssociationMap map = generator.associations(storage);
+				ParallelProductRating parallel = new ParallelProductRating(map, pool, 16);
+				for(User user : generator.users(preferences)) {
+					List<Recommendation> expected = new BatchProductRating(map).rateAll(user, products);
+					List<Recommendation> actual = parallel.rateAll(user, products);
+					for(int i = 0; i < expected.size(); i++) {
+						TestCase.assertEquals(expected.get(i).getProductRating(), actual.get(i).getProductRating());
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void snapshotTest() throws IOException {
+		OntologyGenerator generator = generator(7);
+		List<PreferenceTag> preferenceTags = generator.preferenceTags();
+		List<Preference> preferences = generator.preferences(preferenceTags);
+		List<Product> products = generator.products();
+		AssociationMap map = generator.associations(Storage.PACKED);
+		Path path = folder.newFile("ontology.snapshot").toPath();
+		OntologySnapshot.write(path, preferenceTags, generator.productTags(), preferences, products, map);
+		
+		OntologySnapshot snapshot = OntologySnapshot.open(path);
+		TestCase.assertEquals(50, snapshot.getPreferenceTags().size());
+		TestCase.assertEquals(500, snapshot.getProductTags().size());
+		TestCase.assertEquals(map.size(), snapshot.getAssociations().size());
+		TestCase.assertEquals(map.compile().preferenceTagCount(), snapshot.getCompiledAssociations().preferenceTagCount());
+		for(Association association : map.getAssociations().values()) {
+			TestCase.assertEquals(association.getAssociationValue(), snapshot.getAssociations().getScore(association.getPreferenceTagId(), association.getProductTagId()));
+		}
+		for(Product product : products) {
+			TestCase.assertEquals(product.getTagIds(), snapshot.getProducts().get(product.getId()).getTagIds());
+			TestCase.assertEquals(product.getEan(), snapshot.getProducts().get(product.getId()).getEan());
+		}
+		
+		//tiny segments split values and arrays across mappings
+		OntologySnapshot segmented = OntologySnapshot.open(path, 13);
+		TestCase.assertEquals(snapshot.getProducts().size(), segmented.getProducts().size());
+		for(Association association : map.getAssociations().values()) {
+			TestCase.assertEquals(association.getAssociationValue(), segmented.getAssociations().getScore(association.getPreferenceTagId(), association.getProductTagId()));
+		}
+		
+		//the same user answers give the same ratings
+		User user = generator.users(preferences).get(0);
+		User reopened = new User(user.getUid());
+		for(int i = 0; i < user.getPreferenceList().size(); i++) {
+			reopened.addPreference(snapshot.getPreferences().get(user.getPreferenceList().get(i).getId()), user.getScore(i));
+		}
+		List<Recommendation> expected = new BatchProductRating(map).rateAll(user, products);
+		List<Product> reopenedProducts = new ArrayList<>();
+		for(Product product : products) {
+			reopenedProducts.add(snapshot.getProducts().get(product.getId()));
+		}
+		List<Recommendation> actual = new BatchProductRating(snapshot.getAssociations()).rateAll(reopened, reopenedProducts);
+		for(int i = 0; i < expected.size(); i++) {
+			TestCase.assertEquals(expected.get(i).getProductRating(), actual.get(i).getProductRating(), 1e-10);
+		}
+		
+		//stale, corrupt and truncated snapshots are rejected
+		byte[] bytes = Files.readAllBytes(path);
+		byte[] stale = bytes.clone();
+		stale[7]++;
+		byte[] corrupt = bytes.clone();
+		corrupt[bytes.length/2] ^= 1;
+		for(byte[] invalid : Arrays.asList(stale, corrupt, Arrays.copyOf(bytes, bytes.length - 1), new byte[3])) {
+			Files.write(path, invalid);
+			try {
+				OntologySnapshot.open(path);
+				TestCase.fail("invalid snapshot was opened");
+			} catch(IOException e) {
+				//expected
+			}
+		}
+	}
+}
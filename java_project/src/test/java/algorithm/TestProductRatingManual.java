@@ -164,6 +164,18 @@ public class TestProductRatingManual {
 	public void rankingTest() {
 		
 		prepareSetting1();
+		assertRatings();
+	}
+	
+	@Test
+	public void compiledRankingTest() {
+		
+		prepareSetting1();
+		map = map.compile().asAssociationMap();
+		assertRatings();
+	}
+	
+	private void assertRatings() {
 		
 		ProductRatingHypNorm prf = new ProductRatingHypNorm(products, map, users.get("Thomas"), products.get(1L));
 		System.out.println(prf.getProductRating()); //5.69
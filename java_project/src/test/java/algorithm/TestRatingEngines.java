@@ -0,0 +1,570 @@
+package algorithm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.ethz.coss.algorithm.BatchProductRating;
+import ch.ethz.coss.algorithm.ContradictionIndex;
+import ch.ethz.coss.algorithm.ContradictionIndex.Direction;
+import ch.ethz.coss.algorithm.IncrementalRanking;
+import ch.ethz.coss.algorithm.ParallelProductRating;
+import ch.ethz.coss.algorithm.ProductRatingHypNorm;
+import ch.ethz.coss.algorithm.RatingCache;
+import ch.ethz.coss.algorithm.RatingCache.Eviction;
+import ch.ethz.coss.algorithm.RatingEngine;
+import ch.ethz.coss.algorithm.RatingEngine.CompiledUser;
+import ch.ethz.coss.algorithm.Recommendation;
+import ch.ethz.coss.algorithm.SustainabilityIndexMatrix;
+import ch.ethz.coss.algorithm.TopKRanking;
+import ch.ethz.coss.algorithm.TopKRanking.Placement;
+import ch.ethz.coss.algorithm.ontology.Association;
+import ch.ethz.coss.algorithm.ontology.AssociationMap;
+import ch.ethz.coss.algorithm.ontology.Preference;
+import ch.ethz.coss.algorithm.ontology.PreferenceTag;
+import ch.ethz.coss.algorithm.ontology.Product;
+import ch.ethz.coss.algorithm.ontology.ProductCatalog;
+import ch.ethz.coss.algorithm.ontology.ProductTag;
+import ch.ethz.coss.algorithm.ontology.ProductTagSetInterner;
+import ch.ethz.coss.algorithm.ontology.User;
+import ch.ethz.coss.algorithm.utilities.Scores;
+import ch.ethz.coss.algorithm.utilities.ScoringConfig;
+import junit.framework.TestCase;
+
+/**The alternative rating engines should reproduce the ratings of ProductRatingHypNorm on the pen & paper setting **/
+public class TestRatingEngines {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	AssociationMap map;
+	Map<String, User> users;
+	Map<Long, Product> products;
+	List<Preference> preferences;
+	
+	//rounding tolerance
+	static int testRoundingTolerance = 10;
+
+	/**
+	 * A simple setting. Contains 2 possible contradictions and tests correlation sums over 1
+	 */
+	@Before
+	public void prepareSetting1() {
+		Scores.meanProductRating = 5.0;
+		Scores.ratingScale = 5.0;
+		//load the user
+				User user = new User("Thomas");
+				long idGenerator = 1;
+				
+				//Let's predefine some preferencetags here
+				PreferenceTag w1 = new PreferenceTag(idGenerator++, "w1");
+				PreferenceTag w2 = new PreferenceTag(idGenerator++, "w2");
+				PreferenceTag w3 = new PreferenceTag(idGenerator++, "w3");
+				PreferenceTag w4 = new PreferenceTag(idGenerator++, "w4");
+				
+
+				//load the preference questions from the questionnaires
+				idGenerator = 1;
+				Preference c1 = new Preference("c1.", idGenerator++);
+				Preference c2 = new Preference("c2.", idGenerator++);
+				Preference c3 = new Preference("c3.", idGenerator++);
+				
+				c1.addTags(w1, w2);
+				preferences = Arrays.asList(c1, c2, c3);
+				c2.addTags(w3, w4);
+				c3.addTags(w2, w4);
+				
+				//assign the user answer scores to each questionnaire
+				user.addPreference(c1, 10.0); 
+				user.addPreference(c2, 3.0); 
+				user.addPreference(c3, 7.0);
+				
+				
+				
+				idGenerator = 1;
+				ProductTag z1 = new ProductTag(idGenerator, "z"+idGenerator++);
+				ProductTag z2 = new ProductTag(idGenerator, "z"+idGenerator++);
+				ProductTag z3 = new ProductTag(idGenerator, "z"+idGenerator++);
+				ProductTag z4 = new ProductTag(idGenerator, "z"+idGenerator++);
+				ProductTag z5 = new ProductTag(idGenerator, "z"+idGenerator++);
+				ProductTag z6 = new ProductTag(idGenerator, "z"+idGenerator++);
+				ProductTag z7 = new ProductTag(idGenerator, "z"+idGenerator++);
+				ProductTag z8 = new ProductTag(idGenerator, "z"+idGenerator++);
+				
+				ProductTag z10 = new ProductTag(10, "z10");
+				ProductTag z11 = new ProductTag(11, "z11");
+
+				ProductTag z65 = new ProductTag(65, "z65");
+
+				
+				//load the products to recommend from the database
+				//Green Pistachios
+				Product p1 = new Product("p1", 1);
+				p1.addTags(z1, z2, z3); 
+				//Eco Lamb
+				Product p2 = new Product("p2", 2);
+				p2.addTags(z3, z4, z5, z6);
+				//Fair Yoghurt
+				Product p3 = new Product("p3", 3);
+				p3.addTags(z7, z8); 
+				//Product with no info
+				Product p4 = new Product("p4", 4); 
+				p4.addTags(z2, z10, z11);
+				
+				Product p5 = new Product("p5", 5);
+				p5.addTag(z65);
+				
+				//load the collection of all the products
+				products = new HashMap<>();
+				products.put(p1.getId(), p1);
+				products.put(p2.getId(), p2);
+				products.put(p3.getId(), p3);
+				products.put(p4.getId(), p4);
+				products.put(p5.getId(), p5);				
+
+				
+				//load and add the tag to tag correlations
+				users = Collections.singletonMap("Thomas", user);
+				
+				//w1
+				Association r1 = new Association(z7, w1, -1.0);
+				Association r2 = new Association(z8, w1, 0.3);
+				Association r3 = new Association(z1, w1, 0.4);
+				Association r4 = new Association(z4, w1, 0.2);
+				Association r5 = new Association(z5, w1, 0.3);
+				Association r6 = new Association(z10, w1, -0.2);
+				
+				//w2
+				Association r7 = new Association(z2, w2, -0.3);
+				Association r8 = new Association(z3, w2, 0.3);
+				Association r9 = new Association(z6, w2, -0.2);
+				Association r10 = new Association(z11, w2, 0.3);				
+				
+				
+				//w3
+				Association r11 = new Association(z3, w3, -0.2);
+				Association r12 = new Association(z5, w3, 0.3);
+				Association r13 = new Association(z7, w3, 0.5);
+				Association r14 = new Association(z10, w3, -0.6);
+				
+				//w4
+				Association r15 = new Association(z1, w4, 1.0);
+				Association r16 = new Association(z5, w4, 0.3);
+				Association r17 = new Association(z6, w4, -0.2);
+			
+
+
+				map = new AssociationMap();
+				map.addPair(r1);
+				map.addPair(r2);
+				map.addPair(r3);
+				map.addPair(r4);
+				map.addPair(r5);
+				map.addPair(r6);
+				map.addPair(r7);
+				map.addPair(r8);
+				map.addPair(r9);
+				map.addPair(r10);				
+				map.addPair(r11);
+				map.addPair(r12);
+				map.addPair(r13);
+				map.addPair(r14);
+				map.addPair(r15);
+				map.addPair(r16);
+				map.addPair(r17);
+	
+				
+	}
+	
+
+	/**
+	 * The reference ratings of all products for a user.
+	 */
+	Map<Long, Double> expectedRatings(User user) {
+		Map<Long, Double> ratings = new HashMap<>();
+		for(Product product : products.values()) {
+			ratings.put(product.getId(), new ProductRatingHypNorm(products, map, user, product).getProductRating());
+		}
+		return ratings;
+	}
+	
+	/**
+	 * Moves the user over strict and neutral answers, so that contradictions and zero offsets are covered as well.
+	 */
+	List<User> usersToTest() {
+		User strict = new User("strict");
+		strict.addPreference(preferences.get(0), 0.0);
+		strict.addPreference(preferences.get(1), 10.0);
+		strict.addPreference(preferences.get(2), 5.0);
+		User neutral = new User("neutral");
+		neutral.addPreference(preferences.get(0), 5.0);
+		return Arrays.asList(users.get("Thomas"), strict, neutral);
+	}
+	
+	@Test
+	public void sustainabilityIndexMatrixTest() {
+		SustainabilityIndexMatrix matrix = new SustainabilityIndexMatrix(preferences, products, map);
+		for(User user : usersToTest()) {
+			Map<Long, Double> expected = expectedRatings(user);
+			for(Product product : products.values()) {
+				assertRating(expected.get(product.getId()), matrix.productRating(user, product));
+			}
+			List<Recommendation> recommendations = matrix.recommendAll(user);
+			TestCase.assertEquals(products.size(), recommendations.size());
+			for(Recommendation recommendation : recommendations) {
+				assertRating(expected.get(recommendation.getPid()), recommendation.getProductRating());
+			}
+		}
+	}
+	
+	@Test
+	public void batchProductRatingTest() {
+		BatchProductRating batch = new BatchProductRating(map);
+		for(User user : usersToTest()) {
+			Map<Long, Double> expected = expectedRatings(user);
+			List<Product> catalog = new ArrayList<>(products.values());
+			List<Recommendation> recommendations = batch.rateAll(user, catalog);
+			TestCase.assertEquals(catalog.size(), recommendations.size());
+			for(int i = 0; i < catalog.size(); i++) {
+				TestCase.assertEquals(catalog.get(i).getId(), recommendations.get(i).getPid().longValue());
+				//same traversal order as ProductRatingHypNorm, so the ratings are identical
+				TestCase.assertEquals(expected.get(catalog.get(i).getId()), recommendations.get(i).getProductRating());
+			}
+		}
+	}
+	
+	@Test
+	public void scoringConfigTest() {
+		//a second storefront with ratings from 0 to 100
+		Scores.meanProductRating = 50.0;
+		Scores.ratingScale = 50.0;
+		Map<User, Map<Long, Double>> expected = new HashMap<>();
+		for(User user : usersToTest()) {
+			expected.put(user, expectedRatings(user));
+		}
+		ScoringConfig storefront = ScoringConfig.fromScores();
+		//the globals must not matter anymore
+		Scores.meanProductRating = 5.0;
+		Scores.ratingScale = 5.0;
+		
+		SustainabilityIndexMatrix matrix = new SustainabilityIndexMatrix(preferences, products, map, storefront);
+		BatchProductRating batch = new BatchProductRating(map, storefront);
+		RatingEngine engine = new RatingEngine(map.compile(), storefront);
+		//derived constants as in Scores
+		TestCase.assertEquals(Scores.contradictionAssociationOffset, new ScoringConfig(1.0, 5.0, 50.0, 50.0).getContradictionAssociationOffset());
+		for(User user : expected.keySet()) {
+			List<Recommendation> batchRecommendations = batch.rateAll(user, products.values());
+			int i = 0;
+			for(Product product : products.values()) {
+				double rating = expected.get(user).get(product.getId());
+				TestCase.assertEquals(rating, new ProductRatingHypNorm(products, map, user, product, storefront).getProductRating());
+				assertRating(rating, matrix.productRating(user, product));
+				assertRating(rating, engine.productRating(engine.compile(user), engine.compile(product)));
+				TestCase.assertEquals(rating, batchRecommendations.get(i++).getProductRating());
+			}
+		}
+	}
+	
+	@Test
+	public void scoringViewsTest() {
+		User user = users.get("Thomas");
+		Preference c1 = preferences.get(0);
+		TestCase.assertEquals(3, user.getPreferenceList().size());
+		TestCase.assertSame(c1, user.getPreferenceList().get(0));
+		TestCase.assertEquals(5.0, user.getOffset(0));
+		TestCase.assertEquals(9.0, user.getTotalAbsoluteOffset(), 1e-12);
+		TestCase.assertEquals(2, c1.getTagCount());
+
+		//replacing a preference keeps its position and refreshes the views
+		user.addPreference(c1, 0.0);
+		TestCase.assertSame(c1, user.getPreferenceList().get(0));
+		TestCase.assertEquals(0.0, user.getScore(0));
+		TestCase.assertEquals(-5.0, user.getOffset(0));
+		TestCase.assertEquals(9.0, user.getTotalAbsoluteOffset(ScoringConfig.fromScores()), 1e-12);
+		TestCase.assertEquals(user.getTotalAbsoluteOffset(), user.getTotalAbsoluteOffset(new ScoringConfig(1.0, 5.0, 0.0, 1.0)));
+		TestCase.assertEquals(8.0, user.getTotalAbsoluteOffset(new ScoringConfig(1.0, 4.0, 0.0, 1.0)), 1e-12);
+
+		c1.addTag(new PreferenceTag(42, "w42"));
+		TestCase.assertEquals(3, c1.getTagCount());
+	}
+
+	@Test
+	public void ratingEngineTest() {
+		RatingEngine engine = new RatingEngine(map.compile());
+		for(User user : usersToTest()) {
+			Map<Long, Double> expected = expectedRatings(user);
+			CompiledUser compiled = engine.compile(user);
+			for(Product product : products.values()) {
+				assertRating(expected.get(product.getId()), engine.productRating(compiled, engine.compile(product)));
+			}
+		}
+	}
+	
+	@Test
+	public void parallelProductRatingTest() {
+		BatchProductRating batch = new BatchProductRating(map);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			//chunks of single products, so that every product is rated by its own task
+			ParallelProductRating parallel = new ParallelProductRating(map, pool, 1);
+			for(User user : usersToTest()) {
+				List<Product> catalog = new ArrayList<>(products.values());
+				List<Recommendation> expected = batch.rateAll(user, catalog);
+				List<Recommendation> recommendations = parallel.rateAll(user, catalog);
+				TestCase.assertEquals(expected.size(), recommendations.size());
+				for(int i = 0; i < expected.size(); i++) {
+					TestCase.assertEquals(expected.get(i).getPid(), recommendations.get(i).getPid());
+					TestCase.assertEquals(expected.get(i).getProductRating(), recommendations.get(i).getProductRating());
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void topKRankingTest() {
+		SustainabilityIndexMatrix matrix = new SustainabilityIndexMatrix(preferences, products, map);
+		for(User user : usersToTest()) {
+			Map<Long, Double> expected = expectedRatings(user);
+			for(Placement noInformation : Placement.values()) {
+				for(Placement contradiction : Placement.values()) {
+					//the full sort of the reference ratings
+					List<Long> ranked = new ArrayList<>();
+					List<Long> last = new ArrayList<>();
+					for(Long pid : new TreeSet<>(expected.keySet())) {
+						double rating = expected.get(pid);
+						Placement placement = Double.isNaN(rating) ? noInformation : rating == 0.0 && isContradiction(matrix, user, pid) ? contradiction : Placement.BY_RATING;
+						if(placement == Placement.BY_RATING) {
+							ranked.add(pid);
+						} else if(placement == Placement.LAST) {
+							last.add(pid);
+						}
+					}
+					ranked.sort((p1, p2) -> {
+						int compare = Double.compare(expected.get(p2), expected.get(p1));
+						return compare != 0 ? compare : Long.compare(p1, p2);
+					});
+					ranked.addAll(last);
+					
+					TopKRanking topK = new TopKRanking(matrix, noInformation, contradiction);
+					for(int k = 0; k <= products.size() + 1; k++) {
+						List<Recommendation> recommendations = topK.topK(user, k);
+						TestCase.assertEquals(Math.min(k, ranked.size()), recommendations.size());
+						for(int i = 0; i < recommendations.size(); i++) {
+							TestCase.assertEquals(ranked.get(i), recommendations.get(i).getPid());
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void incrementalRankingTest() {
+		SustainabilityIndexMatrix matrix = new SustainabilityIndexMatrix(preferences, products, map);
+		TopKRanking topK = new TopKRanking(matrix);
+		User slider = new User("slider");
+		slider.addPreference(preferences.get(0), 10.0);
+		IncrementalRanking ranking = new IncrementalRanking(matrix, slider);
+		User user = ranking.getUser();
+
+		//new answers, slider moves, extreme values with contradictions, and all answers at the mean
+		double[][] moves = {{1, 3.0}, {1, 4.0}, {2, 0.0}, {0, 6.0}, {2, 10.0}, {1, 5.0}, {0, 5.0}, {2, 5.0}, {0, 8.0}};
+		for(double[] move : moves) {
+			ranking.update(preferences.get((int) move[0]), move[1]);
+			List<Recommendation> expected = topK.topK(user, products.size());
+			List<Recommendation> actual = ranking.getRanking();
+			TestCase.assertEquals(expected.size(), actual.size());
+			for(int i = 0; i < expected.size(); i++) {
+				TestCase.assertEquals(expected.get(i).getPid(), actual.get(i).getPid());
+				assertRating(expected.get(i).getProductRating(), actual.get(i).getProductRating());
+			}
+			for(Product product : products.values()) {
+				assertRating(matrix.productRating(user, product), ranking.productRating(product.getId()));
+			}
+			TestCase.assertEquals(Math.min(2, expected.size()), ranking.topK(2).size());
+		}
+		//the ranking answers on a copy of the given user
+		TestCase.assertEquals(1, slider.getPreferenceList().size());
+		TestCase.assertEquals(10.0, slider.getScore(0));
+	}
+
+	@Test
+	public void incrementalRankingDriftTest() {
+		SustainabilityIndexMatrix matrix = new SustainabilityIndexMatrix(preferences, products, map);
+		Random random = new Random(3);
+		IncrementalRanking refreshed = new IncrementalRanking(matrix, new User("slider"));
+		IncrementalRanking exact = new IncrementalRanking(matrix, new User("slider"), 1);
+		for(int move = 0; move < 1000; move++) {
+			Preference preference = preferences.get(random.nextInt(preferences.size()));
+			double score = Math.round(random.nextDouble()*100)/10.0;
+			refreshed.update(preference, score);
+			exact.update(preference, score);
+		}
+
+		//a new ranking for the same answers rates from scratch
+		IncrementalRanking fresh = new IncrementalRanking(matrix, refreshed.getUser());
+		for(Product product : products.values()) {
+			assertRating(fresh.rawProductRating(product.getId()), refreshed.rawProductRating(product.getId()));
+			TestCase.assertEquals(fresh.rawProductRating(product.getId()), exact.rawProductRating(product.getId()));
+		}
+		refreshed.refresh();
+		for(Product product : products.values()) {
+			TestCase.assertEquals(fresh.rawProductRating(product.getId()), refreshed.rawProductRating(product.getId()));
+		}
+	}
+	
+	@Test
+	public void ratingCacheTest() {
+		User user = users.get("Thomas");
+		Product p1 = products.get(1L), p2 = products.get(2L), p3 = products.get(3L);
+		RatingCache cache = new RatingCache(products, map, 2, Eviction.LRU);
+		TestCase.assertEquals(expectedRatings(user).get(1L), cache.productRating(user, p1));
+		cache.productRating(user, p2);
+		cache.productRating(user, p1);
+		//p2 is the least recently used
+		cache.productRating(user, p3);
+		cache.productRating(user, p1);
+		TestCase.assertEquals(2, cache.getHits());
+		TestCase.assertEquals(3, cache.getMisses());
+		TestCase.assertEquals(1, cache.getEvictions());
+		cache.productRating(user, p2);
+		TestCase.assertEquals(4, cache.getMisses());
+
+		//every mutation invalidates the cached ratings it affects
+		user.addPreference(preferences.get(1), 9.0);
+		TestCase.assertEquals(expectedRatings(user).get(2L), cache.productRating(user, p2));
+		p2.addTagId(11);
+		TestCase.assertEquals(expectedRatings(user).get(2L), cache.productRating(user, p2));
+		map.addPair(new Association(3, 3, 0.5));
+		TestCase.assertEquals(expectedRatings(user).get(2L), cache.productRating(user, p2));
+		preferences.get(0).addTag(new PreferenceTag(4, "w4"));
+		TestCase.assertEquals(expectedRatings(user).get(2L), cache.productRating(user, p2));
+		TestCase.assertEquals(8, cache.getMisses());
+		TestCase.assertEquals(2, cache.size());
+
+		//users with the same uid and the same number of mutations do not share ratings
+		User first = new User("twin");
+		first.addPreference(preferences.get(0), 9.0);
+		User second = new User("twin");
+		second.addPreference(preferences.get(0), 1.0);
+		TestCase.assertEquals(expectedRatings(first).get(1L), cache.productRating(first, p1));
+		TestCase.assertEquals(expectedRatings(second).get(1L), cache.productRating(second, p1));
+		TestCase.assertFalse(cache.productRating(first, p1) == cache.productRating(second, p1));
+
+		cache = new RatingCache(products, map, 2, Eviction.LFU);
+		cache.productRating(user, p1);
+		cache.productRating(user, p1);
+		cache.productRating(user, p2);
+		//p2 is the least frequently used, although p1 was used before
+		cache.productRating(user, p3);
+		cache.productRating(user, p1);
+		TestCase.assertEquals(2, cache.getHits());
+		TestCase.assertEquals(1, cache.getEvictions());
+	}
+	
+	@Test
+	public void contradictionIndexTest() {
+		ContradictionIndex index = new ContradictionIndex(preferences, products, map);
+		SustainabilityIndexMatrix matrix = new SustainabilityIndexMatrix(preferences, products, map);
+		for(User user : usersToTest()) {
+			List<Product> contradicting = new ArrayList<>();
+			List<Product> remaining = index.filter(user, products.values(), contradicting);
+			TestCase.assertEquals(products.size(), remaining.size() + contradicting.size());
+			for(Product product : products.values()) {
+				boolean contradiction = isContradiction(matrix, user, product.getId());
+				TestCase.assertEquals(contradiction, index.isContradiction(user, product));
+				TestCase.assertEquals(contradiction, contradicting.contains(product));
+			}
+			TestCase.assertEquals(contradicting.size(), index.getContradictingProducts(user).length);
+		}
+		//the strong preference of c1 contradicts the -1.0 association of w1 to z7 of p3
+		TestCase.assertTrue(Arrays.equals(new long[] {3}, index.getContradictingProducts(users.get("Thomas"))));
+		TestCase.assertTrue(Arrays.equals(new long[] {3}, index.getContradictingProducts(preferences.get(0), Direction.PRO)));
+		TestCase.assertEquals(Direction.AGAINST, index.direction(-5.0));
+		TestCase.assertNull(index.direction(1.0));
+	}
+	
+	@Test
+	public void tagSetInterningTest() {
+		//the same items in a second size
+		Product p1Large = new Product("p1-large", 11);
+		p1Large.addTagIds(new ArrayList<>(products.get(1L).getTagIds()));
+		Product p2Large = new Product("p2-large", 12);
+		p2Large.addTagIds(new ArrayList<>(products.get(2L).getTagIds()));
+		List<Product> catalog = new ArrayList<>(products.values());
+		catalog.add(p1Large);
+		catalog.add(p2Large);
+
+		ProductTagSetInterner interner = new ProductTagSetInterner();
+		interner.internAll(catalog);
+		TestCase.assertEquals(products.size(), interner.size());
+		TestCase.assertSame(products.get(1L).getTagSet(), p1Large.getTagSet());
+		TestCase.assertEquals(products.get(1L).getTagSet().signature(), p1Large.getTagSet().signature());
+
+		User user = users.get("Thomas");
+		Map<Long, Double> expected = expectedRatings(user);
+		List<Recommendation> recommendations = new BatchProductRating(map).rateAll(user, catalog);
+		List<Recommendation> parallel = new ParallelProductRating(map, new ForkJoinPool(2), 1).rateAll(user, catalog);
+		for(int i = 0; i < catalog.size(); i++) {
+			long pid = catalog.get(i).getId();
+			TestCase.assertEquals(pid, recommendations.get(i).getPid().longValue());
+			TestCase.assertEquals(expected.get(pid > 10 ? pid - 10 : pid), recommendations.get(i).getProductRating());
+			TestCase.assertEquals(recommendations.get(i).getProductRating(), parallel.get(i).getProductRating());
+		}
+	}
+	
+	@Test
+	public void productCatalogTest() throws IOException, ClassNotFoundException {
+		products.get(2L).setDescription("Bio Äpfel, 1 kg");
+		ProductCatalog catalog = new ProductCatalog(products.values());
+		//the texts in a mapped file, and copied by serialization
+		ProductCatalog mapped = ProductCatalog.mapped(products.values(), folder.newFile("descriptions").toPath());
+		for(ProductCatalog texts : Arrays.asList(catalog, mapped, (ProductCatalog) TestAssociationMap.deserialize(TestAssociationMap.serialize(mapped)))) {
+			TestCase.assertEquals(products.size(), texts.size());
+			for(int ordinal = 0; ordinal < texts.size(); ordinal++) {
+				Product product = products.get(texts.productId(ordinal));
+				TestCase.assertEquals(ordinal, texts.ordinal(product.getId()));
+				Product copy = texts.getProduct(ordinal);
+				TestCase.assertEquals(product.getName(), copy.getName());
+				TestCase.assertEquals(product.getEan(), copy.getEan());
+				TestCase.assertEquals(product.getDescription(), copy.getDescription());
+				TestCase.assertEquals(product.getTagIds(), copy.getTagIds());
+				TestCase.assertEquals(product.getCategories(), copy.getCategories());
+			}
+			TestCase.assertEquals("Bio Äpfel, 1 kg", texts.getDescription(texts.ordinal(2L)));
+		}
+		TestCase.assertEquals(-1, catalog.ordinal(42L));
+
+		BatchProductRating batch = new BatchProductRating(map);
+		for(User user : usersToTest()) {
+			Map<Long, Double> expected = expectedRatings(user);
+			List<Recommendation> recommendations = batch.rateAll(user, catalog);
+			for(int ordinal = 0; ordinal < catalog.size(); ordinal++) {
+				TestCase.assertEquals(catalog.productId(ordinal), recommendations.get(ordinal).getPid().longValue());
+				TestCase.assertEquals(expected.get(catalog.productId(ordinal)), recommendations.get(ordinal).getProductRating());
+			}
+		}
+	}
+	
+	private boolean isContradiction(SustainabilityIndexMatrix matrix, User user, Long pid) {
+		return matrix.rawProductRating(user, products.get(pid)) == Double.NEGATIVE_INFINITY;
+	}
+	
+	static void assertRating(double expected, double actual) {
+		TestCase.assertTrue(expected + " != " + actual, TestProductRatingManual.almostEquals(expected, actual, testRoundingTolerance));
+	}
+}